@@ -1,3 +1,5 @@
+import java.io.DataOutputStream
+
 plugins {
     id("java")
     id("application")
@@ -20,11 +22,118 @@ java {
     }
 }
 
+// JMH benchmarks live in src/jmh/java and run headless with ./gradlew jmh; load tests live in
+// src/load/java and have a task each. Neither goes into the jar.
+sourceSets {
+    create("jmh") {
+        compileClasspath += sourceSets.main.get().output
+        runtimeClasspath += sourceSets.main.get().output
+    }
+    create("load") {
+        compileClasspath += sourceSets.main.get().output
+        runtimeClasspath += sourceSets.main.get().output
+    }
+}
+
 dependencies {
     testImplementation(platform("org.junit:junit-bom:5.10.0"))
     testImplementation("org.junit.jupiter:junit-jupiter")
+
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:1.37")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.37")
 }
 
 tasks.test {
     useJUnitPlatform()
-}
\ No newline at end of file
+    // The rendering tests draw into offscreen images and need no display
+    systemProperty("java.awt.headless", "true")
+}
+
+// Packs the sprite frames into one image, build/generated/atlas/atlas.png, with an index of
+// where each frame is (atlas.index), using SpriteAtlas from the game's own classes. Adding an
+// animation frame is adding a PNG here and a frame to SpriteAtlas.
+val spriteFrames = fileTree("src/main/resources") {
+    include("fighter.png", "enemy.png", "boss.png", "explosion*.png")
+}
+
+val packAtlas by tasks.registering(JavaExec::class) {
+    group = "build"
+    description = "Packs the sprite frames into a texture atlas."
+    val atlasDirectory = layout.buildDirectory.dir("generated/atlas")
+    inputs.files(spriteFrames)
+    outputs.dir(atlasDirectory)
+    classpath = sourceSets.main.get().output.classesDirs
+    mainClass.set("one.cafebabe.game.SpriteAtlas")
+    jvmArgs("-Djava.awt.headless=true")
+    argumentProviders.add(CommandLineArgumentProvider {
+        listOf(atlasDirectory.get().asFile.path) + spriteFrames.files.sortedBy { it.name }.map { it.path }
+    })
+}
+
+// Packs the atlas and the sounds into one indexed file, build/generated/assets/assets.pack,
+// which AssetBundle memory-maps at startup instead of looking up every file in the jar. The
+// format is documented in AssetBundle.
+val packAssets by tasks.registering {
+    group = "build"
+    description = "Packs the sprite atlas and the sounds into one asset bundle."
+    val assets = fileTree("src/main/resources") {
+        include("*.wav")
+    } + files(packAtlas).asFileTree
+    val bundle = layout.buildDirectory.file("generated/assets/assets.pack")
+    inputs.files(assets)
+    outputs.file(bundle)
+    doLast {
+        val files = assets.files.sortedBy { it.name }
+        val header = 12 + files.sumOf { 2 + it.name.toByteArray(Charsets.UTF_8).size + 8 }
+        DataOutputStream(bundle.get().asFile.outputStream().buffered()).use { out ->
+            out.writeInt(0x4A464142) // "JFAB"
+            out.writeInt(1)
+            out.writeInt(files.size)
+            var offset = header
+            for (file in files) {
+                out.writeUTF(file.name)
+                out.writeInt(offset)
+                out.writeInt(file.length().toInt())
+                offset += file.length().toInt()
+            }
+            for (file in files) {
+                out.write(file.readBytes())
+            }
+        }
+    }
+}
+
+tasks.processResources {
+    from(packAssets)
+}
+
+// The jar carries only the bundle; the loose files stay on the classpath of builds that run
+// from build/resources, as a fallback
+tasks.jar {
+    exclude("*.png", "*.wav")
+}
+
+tasks.register<JavaExec>("jmh") {
+    group = "verification"
+    description = "Runs the JMH benchmarks."
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    // The rendering benchmarks draw into offscreen images and need no display
+    jvmArgs("-Djava.awt.headless=true")
+}
+
+tasks.register<JavaExec>("stress") {
+    group = "verification"
+    description = "Plays headless at increasing load levels and reports ticks per second and frame times."
+    classpath = sourceSets["load"].runtimeClasspath
+    mainClass.set("one.cafebabe.game.StressTest")
+    jvmArgs("-Djava.awt.headless=true")
+}
+
+tasks.register<JavaExec>("spectatorTest") {
+    group = "verification"
+    description = "Streams a headless game to many viewers over loopback and reports the cost per viewer."
+    classpath = sourceSets["load"].runtimeClasspath
+    mainClass.set("one.cafebabe.game.SpectatorLoadTest")
+    jvmArgs("-Djava.awt.headless=true")
+}
@@ -0,0 +1,84 @@
+package one.cafebabe.game;
+
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.util.Random;
+
+// A GameWorld in the middle of play with the given number of bullets, enemies and enemy
+// bullets spread over the playfield, away from the fighter so that it survives. The
+// benchmarked steps destroy and move entities, so restore() puts the starting positions
+// back; benchmarks that call it have a restore baseline to subtract.
+final class BenchmarkWorld {
+    // Keep entities this far from the fighter's center
+    private static final float SAFE_DISTANCE = 60;
+
+    final GameWorld world;
+    private final EntityStore bullets;
+    private final EntityStore enemies;
+    private final EntityStore enemyBullets;
+
+    BenchmarkWorld(int entities) throws IOException {
+        world = new GameWorld(SpriteSizes.fromResources(), SoundPlayer.SILENT, 42, entities, entities, entities);
+
+        // Start the game and play six seconds, so that enemies shoot, with nothing to hit the fighter
+        world.handleKeyPress(KeyEvent.VK_SPACE);
+        while (world.gameState != GameWorld.GameState.PLAYING) {
+            world.update(GameWorld.STEP_NANOS);
+        }
+        for (int i = 0; i < 6 * GameWorld.TICKS_PER_SECOND; i++) {
+            world.enemies.clear();
+            world.enemyBullets.clear();
+            world.update(GameWorld.STEP_NANOS);
+        }
+        world.bullets.clear();
+        world.enemies.clear();
+        world.enemyBullets.clear();
+        world.releaseExplosions(0);
+
+        Random random = new Random(42);
+        float fighterX = world.fighter.x + world.fighter.width / 2f;
+        float fighterY = world.fighter.y + world.fighter.height / 2f;
+        for (int n = 0; n < entities; n++) {
+            int i = world.bullets.add(random.nextFloat() * GameWorld.WIDTH, random.nextFloat() * GameWorld.HEIGHT);
+            world.bullets.vx[i] = 400;
+            world.bullets.radius[i] = 5;
+
+            float x, y;
+            do {
+                x = random.nextFloat() * GameWorld.WIDTH;
+                y = random.nextFloat() * GameWorld.HEIGHT;
+            } while (Math.hypot(x - fighterX, y - fighterY) < SAFE_DISTANCE);
+            i = world.enemyBullets.add(x, y);
+            world.enemyBullets.vx[i] = -200;
+            world.enemyBullets.radius[i] = 5;
+
+            do {
+                x = random.nextFloat() * GameWorld.WIDTH;
+                y = random.nextFloat() * GameWorld.HEIGHT;
+            } while (Math.hypot(x + world.enemyWidth / 2f - fighterX, y + world.enemyHeight / 2f - fighterY) < SAFE_DISTANCE);
+            i = world.enemies.add(x, y);
+            world.enemies.vx[i] = -100;
+            world.enemies.time[i] = random.nextFloat();
+        }
+
+        bullets = copy(world.bullets);
+        enemies = copy(world.enemies);
+        enemyBullets = copy(world.enemyBullets);
+    }
+
+    // Puts every entity back where it started
+    void restore() {
+        world.bullets.copyFrom(bullets);
+        world.enemies.copyFrom(enemies);
+        world.enemyBullets.copyFrom(enemyBullets);
+        world.releaseExplosions(0);
+        world.boss = null;
+        world.gameState = GameWorld.GameState.PLAYING;
+    }
+
+    private static EntityStore copy(EntityStore store) {
+        EntityStore copy = new EntityStore(store.capacity);
+        copy.copyFrom(store);
+        return copy;
+    }
+}
@@ -0,0 +1,76 @@
+package one.cafebabe.game;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Swept bullet/enemy collision tests with the SpatialGrid broad phase against testing every
+// pair, with the same number of bullets and enemies spread over the playfield, each one step
+// into its movement
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollisionBenchmark {
+    private static final float ENEMY_SIZE = 38;
+    private static final float BULLET_RADIUS = 5;
+    private static final float STEP_SECONDS = 1f / GameWorld.TICKS_PER_SECOND;
+
+    @Param({"10", "100", "1000", "10000", "50000"})
+    public int entities;
+
+    private EntityStore bullets;
+    private EntityStore enemies;
+    private SpatialGrid grid;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        bullets = new EntityStore(entities);
+        enemies = new EntityStore(entities);
+        for (int i = 0; i < entities; i++) {
+            int b = bullets.add(random.nextFloat() * GameWorld.WIDTH, random.nextFloat() * GameWorld.HEIGHT);
+            bullets.radius[b] = BULLET_RADIUS;
+            bullets.prevX[b] -= 400 * STEP_SECONDS;
+            int e = enemies.add(random.nextFloat() * GameWorld.WIDTH, random.nextFloat() * GameWorld.HEIGHT);
+            enemies.prevX[e] += 100 * STEP_SECONDS;
+        }
+        grid = new SpatialGrid(GameWorld.WIDTH, GameWorld.HEIGHT);
+    }
+
+    @Benchmark
+    public int allPairs() {
+        int hits = 0;
+        for (int i = 0; i < bullets.count; i++) {
+            if (SpatialGrid.scanForFirstHit(enemies, ENEMY_SIZE, ENEMY_SIZE, bullets, i) >= 0) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    @Benchmark
+    public int spatialGrid() {
+        int hits = 0;
+        grid.buildBoxes(enemies, ENEMY_SIZE, ENEMY_SIZE);
+        for (int i = 0; i < bullets.count; i++) {
+            if (grid.firstHit(enemies, ENEMY_SIZE, ENEMY_SIZE, bullets, i) >= 0) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,74 @@
+package one.cafebabe.game;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Drawing a frame of play into an offscreen image, with the given number of bullets,
+// enemies and enemy bullets on screen, with Java2D or the software renderer. Runs headless;
+// there is no window or video memory.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+    @Param({"10", "100", "1000", "10000", "50000"})
+    public int entities;
+
+    @Param({"false", "true"})
+    public boolean software;
+
+    private GameRenderer renderer;
+    private RenderSnapshot frame;
+    private BufferedImage image;
+    private Graphics2D g2d;
+
+    @Setup
+    public void setUp() throws IOException {
+        renderer = new GameRenderer(new SpriteCache(read("/fighter.png"), read("/enemy.png"), read("/boss.png"),
+                read("/explosion1.png"), read("/explosion2.png")));
+        renderer.setSoftware(software);
+
+        GameWorld world = new BenchmarkWorld(entities).world;
+        frame = new RenderSnapshot(entities, entities, entities);
+        frame.capture(world, 0.5f);
+
+        image = new BufferedImage(GameWorld.WIDTH, GameWorld.HEIGHT, BufferedImage.TYPE_INT_RGB);
+        g2d = image.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        g2d.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage drawGame() {
+        g2d.setColor(Color.BLACK);
+        g2d.fillRect(0, 0, GameWorld.WIDTH, GameWorld.HEIGHT);
+        renderer.render(g2d, frame);
+        return image;
+    }
+
+    private static BufferedImage read(String resource) throws IOException {
+        return ImageIO.read(RenderBenchmark.class.getResourceAsStream(resource));
+    }
+}
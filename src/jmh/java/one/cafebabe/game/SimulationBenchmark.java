@@ -0,0 +1,102 @@
+package one.cafebabe.game;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// One simulation step and its parts, with the given number of each kind of entity. The
+// update and collision benchmarks restore the world first; subtract restore() from them.
+// Enemies are updated as a whole EntityStore; bosses and explosions one object at a time,
+// with as many of them as there are entities.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimulationBenchmark {
+    private static final float DELTA_TIME = 1f / GameWorld.TICKS_PER_SECOND;
+    // Late enough in the game for enemies to shoot, too early for the boss
+    private static final long GAME_TIME_MILLIS = 6000;
+
+    @Param({"10", "100", "1000", "10000", "50000"})
+    public int entities;
+
+    private BenchmarkWorld fixture;
+    private GameWorld world;
+    private GameWorld.Boss[] bosses;
+    private GameWorld.Explosion[] explosions;
+
+    @Setup
+    public void setUp() throws IOException {
+        fixture = new BenchmarkWorld(entities);
+        world = fixture.world;
+
+        Random random = new Random(42);
+        bosses = new GameWorld.Boss[entities];
+        explosions = new GameWorld.Explosion[entities];
+        for (int i = 0; i < entities; i++) {
+            bosses[i] = world.new Boss().init(GameWorld.WIDTH + 50, random.nextFloat() * GameWorld.HEIGHT);
+            explosions[i] = world.new Explosion().init(random.nextFloat() * GameWorld.WIDTH,
+                    random.nextFloat() * GameWorld.HEIGHT, world.enemyWidth, world.enemyHeight, false);
+        }
+    }
+
+    @Benchmark
+    public GameWorld restore() {
+        fixture.restore();
+        return world;
+    }
+
+    @Benchmark
+    public GameWorld updatePlaying() {
+        fixture.restore();
+        world.updatePlaying(DELTA_TIME);
+        return world;
+    }
+
+    @Benchmark
+    public GameWorld checkCollisions() {
+        fixture.restore();
+        world.checkCollisions();
+        return world;
+    }
+
+    @Benchmark
+    public GameWorld updateEnemies() {
+        fixture.restore();
+        world.updateEnemies(DELTA_TIME, GAME_TIME_MILLIS);
+        return world;
+    }
+
+    @Benchmark
+    public GameWorld.Boss[] updateBosses() {
+        for (GameWorld.Boss boss : bosses) {
+            boss.update(DELTA_TIME);
+        }
+        return bosses;
+    }
+
+    @Benchmark
+    public GameWorld.Explosion[] updateExplosions() {
+        for (GameWorld.Explosion explosion : explosions) {
+            explosion.update(DELTA_TIME);
+            if (explosion.isFinished()) {
+                explosion.init(explosion.x, explosion.y, explosion.width, explosion.height, false);
+            }
+        }
+        return explosions;
+    }
+}
@@ -0,0 +1,247 @@
+package one.cafebabe.game;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Random;
+
+// Streams a headless game in real time over loopback to many viewers and reports what serving
+// them costs: the bandwidth per viewer, the frame sizes, and the CPU time the game thread
+// spends encoding and sending, in total and per viewer.
+//
+// The viewers share one reader thread with a Selector that only counts bytes, except the first,
+// which decodes the stream on its own thread and checks that it sees every tick in order. The
+// game thread also decodes each frame in-process and checks it against the world: positions
+// must be within the quantisation error.
+//
+// Usage: ./gradlew spectatorTest --args="[--viewers=200] [--seconds=30] [--seed=N] [--config=FILE]
+//                                         [--<setting>=V]"
+final class SpectatorLoadTest {
+    // Half of the 1/4 px quantisation step, with some room for float rounding
+    private static final float TOLERANCE = 0.126f;
+
+    private final GameWorld world;
+    private final SnapshotCodec encoder;
+    private final SnapshotCodec decoder = new SnapshotCodec();
+    private final RenderSnapshot captured;
+    private final RenderSnapshot decoded;
+    private final ByteBuffer frame;
+    private long checkedFrames;
+    private long mismatches;
+
+    private SpectatorLoadTest(GameWorld world) {
+        this.world = world;
+        GameConfig config = world.config;
+        encoder = new SnapshotCodec(config.bulletCapacity, config.enemyCapacity, config.enemyBulletCapacity);
+        captured = new RenderSnapshot(config.bulletCapacity, config.enemyCapacity, config.enemyBulletCapacity);
+        decoded = new RenderSnapshot(config.bulletCapacity, config.enemyCapacity, config.enemyBulletCapacity);
+        frame = ByteBuffer.allocateDirect(SnapshotCodec.maxFrameBytes(
+                config.bulletCapacity, config.enemyCapacity, config.enemyBulletCapacity));
+    }
+
+    // Encodes and decodes the current state of the world and compares the result with it
+    private void check() {
+        captured.capture(world, 1);
+        frame.clear();
+        encoder.encode(captured, checkedFrames, checkedFrames % SpectatorServer.KEYFRAME_INTERVAL == 0, frame);
+        frame.flip();
+        long tick = decoder.decode(frame, decoded);
+        boolean same = tick == checkedFrames && !frame.hasRemaining()
+                && decoded.gameState == captured.gameState && decoded.score == captured.score
+                && decoded.bossVisible == captured.bossVisible
+                && close(decoded.fighterX, captured.fighterX) && close(decoded.fighterY, captured.fighterY)
+                && (!captured.bossVisible || close(decoded.bossX, captured.bossX) && close(decoded.bossY, captured.bossY))
+                && same(decoded.bullets, captured.bullets) && same(decoded.enemies, captured.enemies)
+                && same(decoded.enemyBullets, captured.enemyBullets)
+                && decoded.explosionCount == captured.explosionCount
+                && same(decoded.particles, captured.particles);
+        if (!same && mismatches++ == 0) {
+            System.out.println("First mismatch at tick " + checkedFrames);
+        }
+        checkedFrames++;
+    }
+
+    private static boolean same(EntityStore a, EntityStore b) {
+        if (a.count != b.count) {
+            return false;
+        }
+        for (int i = 0; i < a.count; i++) {
+            if (!close(a.x[i], b.x[i]) || !close(a.y[i], b.y[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean same(ParticleSystem a, ParticleSystem b) {
+        if (a.count != b.count) {
+            return false;
+        }
+        for (int i = 0; i < a.count; i++) {
+            if (!close(a.x[i], b.x[i]) || !close(a.y[i], b.y[i]) || a.color[i] != b.color[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean close(float a, float b) {
+        return Math.abs(a - b) <= TOLERANCE;
+    }
+
+    // Reads all the counting viewers' bytes and throws them away
+    private static void drain(Selector selector, long[] received) {
+        ByteBuffer sink = ByteBuffer.allocateDirect(256 * 1024);
+        try {
+            while (selector.isOpen()) {
+                selector.select();
+                for (SelectionKey key : selector.selectedKeys()) {
+                    sink.clear();
+                    int n = ((SocketChannel) key.channel()).read(sink);
+                    if (n < 0) {
+                        key.cancel();
+                    } else {
+                        received[0] += n;
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (ClosedSelectorException e) {
+            // The test is over
+        } catch (IOException e) {
+            if (selector.isOpen()) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Decodes the stream like a SpectatorClient and counts the frames and gaps in the ticks
+    private static void follow(SocketChannel channel, long[] result) {
+        SnapshotCodec codec = new SnapshotCodec();
+        RenderSnapshot snapshot = new RenderSnapshot();
+        ByteBuffer length = ByteBuffer.allocate(4);
+        ByteBuffer frame = ByteBuffer.allocateDirect(64 * 1024);
+        long lastTick = -1;
+        try {
+            while (true) {
+                length.clear();
+                readFully(channel, length);
+                int size = length.getInt(0);
+                if (frame.capacity() < size) {
+                    frame = ByteBuffer.allocateDirect(size);
+                }
+                frame.clear().limit(size);
+                readFully(channel, frame);
+                frame.flip();
+                long tick = codec.decode(frame, snapshot);
+                if (tick >= 0) {
+                    if (lastTick >= 0 && tick != lastTick + 1) {
+                        result[1]++;
+                    }
+                    lastTick = tick;
+                    result[0]++;
+                }
+            }
+        } catch (EOFException e) {
+            // The server closed the stream
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+
+        int viewerCount = 200;
+        long seconds = 30;
+        long seed = new Random().nextLong();
+        for (String arg : args) {
+            if (arg.startsWith("--viewers=")) {
+                viewerCount = Integer.parseInt(arg.substring("--viewers=".length()));
+            } else if (arg.startsWith("--seconds=")) {
+                seconds = Long.parseLong(arg.substring("--seconds=".length()));
+            } else if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(arg.substring("--seed=".length()));
+            }
+        }
+        if (viewerCount < 1) {
+            throw new IllegalArgumentException("--viewers must be at least 1: " + viewerCount);
+        }
+
+        GameWorld world = new GameWorld(SpriteSizes.fromResources(), SoundPlayer.SILENT, seed,
+                GameConfig.fromArgs(args));
+        SpectatorLoadTest test = new SpectatorLoadTest(world);
+        HeadlessGame game = new HeadlessGame(GameWorld.STEP_NANOS, world);
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        long[] followed = new long[2];
+        Thread follower;
+        try (SpectatorServer server = new SpectatorServer(0, world.config); Selector selector = Selector.open()) {
+            InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.port());
+
+            SocketChannel first = SocketChannel.open(address);
+            follower = new Thread(() -> follow(first, followed), "Spectator follower");
+            follower.start();
+            for (int i = 1; i < viewerCount; i++) {
+                SocketChannel channel = SocketChannel.open(address);
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ);
+            }
+            long[] received = new long[1];
+            Thread reader = new Thread(() -> drain(selector, received), "Spectator viewers");
+            reader.setDaemon(true);
+            reader.start();
+
+            System.out.printf("Streaming %d s of play to %d viewers on port %d%n", seconds, viewerCount, server.port());
+            server.setReportInterval(Long.MAX_VALUE);
+            game.serve(server);
+            // One step to accept the viewers, and a second of play to warm up
+            game.play(GameWorld.STEP_NANOS);
+            game.play(1_000_000_000L);
+            server.resetStats(System.nanoTime());
+
+            long cpuBefore = threads.getCurrentThreadCpuTime();
+            long start = System.nanoTime();
+            for (long s = 0; s < seconds; s++) {
+                game.play(1_000_000_000L);
+                test.check();
+            }
+            double wallSeconds = (System.nanoTime() - start) / 1e9;
+            double cpuSeconds = (threads.getCurrentThreadCpuTime() - cpuBefore) / 1e9;
+
+            System.out.println(server.report(wallSeconds));
+            System.out.printf("Game thread CPU, simulation included: %.1f%% of a core%n",
+                    100 * cpuSeconds / wallSeconds);
+        }
+        // Closing the server ended the stream of the decoding viewer
+        follower.join();
+        System.out.printf("Decoding viewer: %d frames, %d gaps in the ticks%n", followed[0], followed[1]);
+        game.serve(null);
+
+        // The in-process check, over more frames than the samples taken during the stream
+        for (int i = 0; i < 36_000; i++) {
+            game.simulateSteps(1);
+            test.check();
+        }
+        System.out.printf("Codec check: %d frames, %d outside the quantisation error%n",
+                test.checkedFrames, test.mismatches);
+        if (test.mismatches > 0) {
+            System.exit(1);
+        }
+    }
+}
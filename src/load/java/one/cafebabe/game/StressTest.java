@@ -0,0 +1,158 @@
+package one.cafebabe.game;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+// Plays the game headless at increasing load levels and reports, per level, how many
+// simulation steps per second the machine sustains and how long a whole frame takes: one
+// step, the snapshot and drawing it into an offscreen image. Use it to find the load a
+// machine still runs at 60 frames per second.
+//
+// Usage: ./gradlew stress --args="[--levels=1,10,100,1000] [--seconds=30] [--warmup=5]
+//                                  [--frame-seconds=5] [--seed=N] [--config=FILE] [--<setting>=V]"
+//
+// Each level multiplies the load setting of the configuration. The fighter holds fire and is
+// invulnerable, and the endless stage sends enemies for the whole run, unless the configuration
+// says otherwise.
+// Drawing runs on the CPU without a display, so the frame times are an upper bound for a
+// machine whose graphics pipeline is accelerated.
+final class StressTest {
+    private static final long FRAME_BUDGET_NANOS = GameWorld.STEP_NANOS;
+
+    private final GameConfig base;
+    private final long seed;
+    private final SpriteSizes sizes;
+    private final GameRenderer renderer;
+    private final BufferedImage image = new BufferedImage(GameWorld.WIDTH, GameWorld.HEIGHT, BufferedImage.TYPE_INT_RGB);
+
+    StressTest(GameConfig base, long seed) throws IOException, InterruptedException {
+        this.base = base;
+        this.seed = seed;
+        // Every sprite has to be there before frames are timed
+        Assets assets = Assets.load();
+        Assets.await(assets.all);
+        sizes = assets.sizes;
+        renderer = new GameRenderer(new SpriteCache(assets));
+    }
+
+    // The configuration of one load level
+    GameConfig config(double level) {
+        GameConfig config = base.with(GameConfig.LOAD, level * Double.parseDouble(
+                base.toProperties().getProperty(GameConfig.LOAD, "1")));
+        if (!base.toProperties().containsKey(GameConfig.INVULNERABLE)) {
+            config = config.with(GameConfig.INVULNERABLE, true);
+        }
+        if (!base.toProperties().containsKey(GameConfig.STAGE)) {
+            config = config.with(GameConfig.STAGE, "endless");
+        }
+        return config;
+    }
+
+    void run(double level, long warmupSeconds, long seconds, long frameSeconds) {
+        GameConfig config = config(level);
+        GameWorld world = new GameWorld(sizes, SoundPlayer.SILENT, seed, config);
+
+        // Start the game and let the load build up
+        while (world.gameState != GameWorld.GameState.PLAYING) {
+            step(world);
+        }
+        for (long i = warmupSeconds * GameWorld.TICKS_PER_SECOND; i > 0; i--) {
+            step(world);
+        }
+
+        // Simulation only
+        FrameProfiler profiler = world.profiler;
+        profiler.setWindow(Long.MAX_VALUE);
+        profiler.setEnabled(true);
+        long steps = seconds * GameWorld.TICKS_PER_SECOND;
+        long bullets = 0, enemies = 0, enemyBullets = 0;
+        long start = System.nanoTime();
+        for (long i = 0; i < steps; i++) {
+            step(world);
+            bullets += world.bullets.count;
+            enemies += world.enemies.count;
+            enemyBullets += world.enemyBullets.count;
+        }
+        double wallSeconds = (System.nanoTime() - start) / 1e9;
+        profiler.summarize();
+        profiler.setEnabled(false);
+        int stepPhase = FrameProfiler.Phase.STEP.ordinal();
+
+        // Whole frames
+        RenderSnapshot snapshot = new RenderSnapshot(
+                config.bulletCapacity, config.enemyCapacity, config.enemyBulletCapacity);
+        LatencyHistogram frames = new LatencyHistogram();
+        long overBudget = 0;
+        Graphics2D g2d = image.createGraphics();
+        try {
+            for (long i = frameSeconds * GameWorld.TICKS_PER_SECOND; i > 0; i--) {
+                long frameStart = System.nanoTime();
+                step(world);
+                snapshot.capture(world, 1);
+                g2d.setColor(Color.BLACK);
+                g2d.fillRect(0, 0, GameWorld.WIDTH, GameWorld.HEIGHT);
+                renderer.render(g2d, snapshot);
+                long frameNanos = System.nanoTime() - frameStart;
+                frames.record(frameNanos);
+                if (frameNanos > FRAME_BUDGET_NANOS) {
+                    overBudget++;
+                }
+            }
+        } finally {
+            g2d.dispose();
+        }
+
+        System.out.printf("%8.4g %8d %8d %9d %10.0f %8.3f %8.3f %8.3f %8.3f %8.3f %8.3f %7.1f%%%n",
+                level, enemies / steps, bullets / steps, enemyBullets / steps, steps / wallSeconds,
+                profiler.p50[stepPhase] / 1e6, profiler.p99[stepPhase] / 1e6, profiler.max[stepPhase] / 1e6,
+                frames.percentile(50) / 1e6, frames.percentile(99) / 1e6, frames.max() / 1e6,
+                frames.count() == 0 ? 0.0 : 100.0 * overBudget / frames.count());
+        if (world.gameState != GameWorld.GameState.PLAYING) {
+            System.out.println("         (the game ended during the run; use an endless stage and invulnerable to keep the load)");
+        }
+    }
+
+    private static void step(GameWorld world) {
+        world.applyInput(Input.FIRE);
+        world.update(GameWorld.STEP_NANOS);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+
+        String levels = "1,10,100,1000";
+        long seconds = 30;
+        long warmupSeconds = 5;
+        long frameSeconds = 5;
+        long seed = 42;
+        for (String arg : args) {
+            if (arg.startsWith("--levels=")) {
+                levels = arg.substring("--levels=".length());
+            } else if (arg.startsWith("--seconds=")) {
+                seconds = Long.parseLong(arg.substring("--seconds=".length()));
+            } else if (arg.startsWith("--warmup=")) {
+                warmupSeconds = Long.parseLong(arg.substring("--warmup=".length()));
+            } else if (arg.startsWith("--frame-seconds=")) {
+                frameSeconds = Long.parseLong(arg.substring("--frame-seconds=".length()));
+            } else if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(arg.substring("--seed=".length()));
+            }
+        }
+
+        StressTest test = new StressTest(GameConfig.fromArgs(args), seed);
+        System.out.printf("Stress test: %d s of simulation and %d s of frames per level after %d s of warm-up, " +
+                        "seed %d, %d CPUs%n", seconds, frameSeconds, warmupSeconds, seed,
+                Runtime.getRuntime().availableProcessors());
+        System.out.printf("%8s %8s %8s %9s %10s %26s %26s %8s%n",
+                "", "average", "", "enemy", "", "step (ms)", "frame (ms)", "");
+        System.out.printf("%8s %8s %8s %9s %10s %8s %8s %8s %8s %8s %8s %8s%n",
+                "load", "enemies", "bullets", "bullets", "ticks/s", "p50", "p99", "max", "p50", "p99", "max", "> 16.7ms");
+        for (String level : levels.split(",")) {
+            double load = Double.parseDouble(level.trim());
+            System.out.println("         " + test.config(load));
+            test.run(load, warmupSeconds, seconds, frameSeconds);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package one.cafebabe.game;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+// The images and sounds of the game packed into one file by the packAssets build task, with
+// an index at the front:
+//
+//   int magic ("JFAB"), int version, int count,
+//   count times: UTF name (e.g. "fighter.png"), int offset from the start of the file, int length
+//
+// followed by the files themselves. A bundle on disk is memory-mapped, and one inside the jar
+// is read in a single lookup, so loading an asset is a slice of one buffer instead of a jar
+// entry lookup and an inflater per file. When there is no bundle, for example when running
+// from an IDE that does not run the build task, assets are read from the classpath one by one.
+final class AssetBundle {
+    static final String RESOURCE = "/assets.pack";
+    private static final int MAGIC = 0x4A464142;
+    private static final int VERSION = 1;
+
+    // The bundle on the classpath, opened on first use
+    private static final class Shared {
+        static final AssetBundle BUNDLE = openShared();
+    }
+
+    // Null when reading from the classpath
+    private final ByteBuffer data;
+    private final Map<String, int[]> index = new HashMap<>();
+    final String source;
+
+    private AssetBundle(ByteBuffer data, String source) throws IOException {
+        this.data = data;
+        this.source = source;
+        if (data == null) {
+            return;
+        }
+        if (data.getInt(0) != MAGIC) {
+            throw new IOException("Not an asset bundle: " + source);
+        }
+        if (data.getInt(4) != VERSION) {
+            throw new IOException("Unsupported asset bundle version " + data.getInt(4) + ": " + source);
+        }
+        ByteBuffer in = data.duplicate();
+        in.position(8);
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            byte[] name = new byte[in.getShort() & 0xFFFF];
+            in.get(name);
+            index.put(new String(name, StandardCharsets.UTF_8), new int[]{in.getInt(), in.getInt()});
+        }
+    }
+
+    static AssetBundle shared() {
+        return Shared.BUNDLE;
+    }
+
+    // Maps the bundle in the given file
+    static AssetBundle open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new AssetBundle(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), file.toString());
+        }
+    }
+
+    private static AssetBundle openShared() {
+        try {
+            URL url = AssetBundle.class.getResource(RESOURCE);
+            if (url == null) {
+                return new AssetBundle(null, "classpath");
+            }
+            if (url.getProtocol().equals("file")) {
+                return open(Paths.get(url.toURI()));
+            }
+            try (InputStream in = url.openStream()) {
+                byte[] bytes = in.readAllBytes();
+                ByteBuffer data = ByteBuffer.allocateDirect(bytes.length);
+                data.put(bytes).flip();
+                return new AssetBundle(data, url.toString());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    boolean contains(String name) {
+        return data == null ? AssetBundle.class.getResource("/" + name) != null : index.containsKey(name);
+    }
+
+    // The contents of the asset, a read-only view of the bundle when it is packed
+    ByteBuffer get(String name) throws IOException {
+        if (data == null) {
+            try (InputStream in = openResource(name)) {
+                return ByteBuffer.wrap(in.readAllBytes()).asReadOnlyBuffer();
+            }
+        }
+        int[] entry = index.get(name);
+        if (entry == null) {
+            throw new IOException("Not in " + source + ": " + name);
+        }
+        ByteBuffer slice = data.asReadOnlyBuffer();
+        slice.position(entry[0]).limit(entry[0] + entry[1]);
+        return slice.slice();
+    }
+
+    InputStream open(String name) throws IOException {
+        if (data == null) {
+            return openResource(name);
+        }
+        return new BufferInputStream(get(name));
+    }
+
+    private static InputStream openResource(String name) throws IOException {
+        InputStream in = AssetBundle.class.getResourceAsStream("/" + name);
+        if (in == null) {
+            throw new IOException("Resource not found: /" + name);
+        }
+        return in;
+    }
+
+    // Reads straight from the mapped bundle
+    private static final class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        // Audio decoders look ahead at the header and go back
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public void mark(int readLimit) {
+            buffer.mark();
+        }
+
+        @Override
+        public void reset() {
+            buffer.reset();
+        }
+    }
+}
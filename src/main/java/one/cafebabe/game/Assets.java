@@ -0,0 +1,118 @@
+package one.cafebabe.game;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Loads the sprite atlas and the sounds of the game from an AssetBundle on a few threads at
+// once. load() only starts the work and returns; every asset is a CompletableFuture, so the
+// game waits for the ones it needs right away (the sprites, as the title screen shows the
+// fighter) and the sounds arrive while the title screen is up. The sprite sizes come from the
+// atlas index, which is read without decoding anything.
+final class Assets {
+    final AssetBundle bundle;
+    final long startNanos = System.nanoTime();
+    final SpriteSizes sizes;
+    final CompletableFuture<SpriteAtlas> atlas;
+    private final Map<SoundEffect, CompletableFuture<Sound>> sounds = new EnumMap<>(SoundEffect.class);
+    // Completes when everything is loaded, or fails with the first asset that could not be
+    final CompletableFuture<Void> all;
+
+    // A decoded sound effect, ready to be opened as Clips
+    static final class Sound {
+        final AudioFormat format;
+        final byte[] data;
+
+        Sound(AudioFormat format, byte[] data) {
+            this.format = format;
+            this.data = data;
+        }
+    }
+
+    private Assets(AssetBundle bundle) throws IOException {
+        this.bundle = bundle;
+        sizes = SpriteSizes.from(bundle);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService loaders = Executors.newFixedThreadPool(
+                Math.min(4, Runtime.getRuntime().availableProcessors()), runnable -> {
+                    Thread thread = new Thread(runnable, "Asset loader " + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        // The critical asset first, so it is not queued behind the others
+        atlas = CompletableFuture.supplyAsync(this::readAtlas, loaders);
+        for (SoundEffect effect : SoundEffect.values()) {
+            sounds.put(effect, CompletableFuture.supplyAsync(() -> readSound(effect), loaders));
+        }
+        // The threads finish the queued work and then end
+        loaders.shutdown();
+
+        CompletableFuture<?>[] everything = new CompletableFuture<?>[1 + sounds.size()];
+        everything[0] = atlas;
+        int i = 1;
+        for (CompletableFuture<Sound> sound : sounds.values()) {
+            everything[i++] = sound;
+        }
+        all = CompletableFuture.allOf(everything);
+    }
+
+    // Starts loading everything from the bundle on the classpath
+    static Assets load() throws IOException {
+        return load(AssetBundle.shared());
+    }
+
+    static Assets load(AssetBundle bundle) throws IOException {
+        return new Assets(bundle);
+    }
+
+    CompletableFuture<Sound> sound(SoundEffect effect) {
+        return sounds.get(effect);
+    }
+
+    // Waits for an asset and returns it, with the IOException that failed it if it did. Unlike
+    // join(), an interrupt ends the wait.
+    static <T> T await(CompletableFuture<T> asset) throws IOException, InterruptedException {
+        try {
+            return asset.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new CompletionException(e.getCause());
+        }
+    }
+
+    private SpriteAtlas readAtlas() {
+        try {
+            return SpriteAtlas.load(bundle);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Sound readSound(SoundEffect effect) {
+        try (InputStream in = bundle.open(effect.resource);
+             AudioInputStream audio = AudioSystem.getAudioInputStream(
+                     in.markSupported() ? in : new BufferedInputStream(in))) {
+            return new Sound(audio.getFormat(), audio.readAllBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (UnsupportedAudioFileException e) {
+            throw new UncheckedIOException(new IOException("Unsupported audio file: " + effect.resource, e));
+        }
+    }
+}
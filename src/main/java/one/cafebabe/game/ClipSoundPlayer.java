@@ -0,0 +1,124 @@
+package one.cafebabe.game;
+
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Clip;
+import javax.sound.sampled.LineUnavailableException;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Plays sound effects through pre-opened Clips. Every WAV is decoded once, by Assets, into
+// a fixed set of voices per effect; play() only queues the request, and a single audio
+// thread rewinds and starts a voice, so the game thread never touches the audio system.
+// The audio thread opens the voices itself as the sounds finish loading, so opening the
+// player does not hold up the title screen; effects played before then are dropped.
+final class ClipSoundPlayer implements SoundPlayer {
+    private static final int QUEUE_SIZE = 32;
+
+    private final Assets assets;
+    // Only touched by the audio thread, and by close() after it ended
+    private final Map<SoundEffect, Voices> voices = new EnumMap<>(SoundEffect.class);
+    private final BlockingQueue<SoundEffect> requests = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final Thread audioThread;
+    private volatile boolean ready;
+
+    private ClipSoundPlayer(Assets assets) {
+        this.assets = assets;
+        audioThread = new Thread(this::run, "sound");
+        audioThread.setDaemon(true);
+        audioThread.start();
+    }
+
+    // Starts opening the audio device; without one the player stays silent
+    static SoundPlayer open(Assets assets) {
+        return new ClipSoundPlayer(assets);
+    }
+
+    @Override
+    public void play(SoundEffect effect) {
+        // Drop the request rather than block the game thread if the audio thread falls behind
+        if (ready) {
+            requests.offer(effect);
+        }
+    }
+
+    @Override
+    public void close() {
+        audioThread.interrupt();
+        try {
+            audioThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeVoices();
+    }
+
+    private void run() {
+        try {
+            for (SoundEffect effect : SoundEffect.values()) {
+                voices.put(effect, new Voices(Assets.await(assets.sound(effect)), effect.polyphony));
+            }
+        } catch (IOException | LineUnavailableException | IllegalArgumentException | SecurityException e) {
+            System.err.println("Sound disabled: " + e);
+            closeVoices();
+            voices.clear();
+            return;
+        } catch (InterruptedException e) {
+            // Closed while the sounds were loading; close() closes the voices opened so far
+            return;
+        }
+        ready = true;
+
+        try {
+            while (true) {
+                voices.get(requests.take()).play();
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        }
+    }
+
+    private void closeVoices() {
+        for (Voices v : voices.values()) {
+            v.close();
+        }
+    }
+
+    // The pre-opened Clips of one effect, used round-robin. When all of them are busy the
+    // one that started first is restarted, which keeps polyphony bounded.
+    private static final class Voices {
+        private final Clip[] clips;
+        private int next = 0;
+
+        Voices(Assets.Sound sound, int polyphony) throws LineUnavailableException {
+            clips = new Clip[polyphony];
+            try {
+                for (int i = 0; i < clips.length; i++) {
+                    clips[i] = AudioSystem.getClip();
+                    clips[i].open(sound.format, sound.data, 0, sound.data.length);
+                }
+            } catch (LineUnavailableException | RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        void play() {
+            Clip clip = clips[next];
+            next = (next + 1) % clips.length;
+            clip.stop();
+            clip.setFramePosition(0);
+            clip.start();
+        }
+
+        void close() {
+            for (Clip clip : clips) {
+                if (clip != null) {
+                    clip.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package one.cafebabe.game;
+
+// Struct-of-arrays storage for many small game objects such as bullets and enemies.
+// Each attribute is a parallel primitive array indexed by entity, and entities are kept
+// packed in [0, count): removing one moves the last entity into its slot, so removal is
+// O(1) and a pass over all entities is a linear walk over a few arrays.
+final class EntityStore {
+    // Set on entities that were destroyed but not yet removed
+    static final int DEAD = 1;
+
+    final int capacity;
+    int count = 0;
+
+    final float[] x, y;
+    final float[] prevX, prevY;
+    final float[] vx, vy;
+    final float[] radius;
+    // Time alive in seconds, and the line enemies wave around
+    final float[] time;
+    final float[] baseY;
+    final int[] flags;
+
+    EntityStore(int capacity) {
+        this.capacity = capacity;
+        x = new float[capacity];
+        y = new float[capacity];
+        prevX = new float[capacity];
+        prevY = new float[capacity];
+        vx = new float[capacity];
+        vy = new float[capacity];
+        radius = new float[capacity];
+        time = new float[capacity];
+        baseY = new float[capacity];
+        flags = new int[capacity];
+    }
+
+    // Adds an entity at rest and returns its index, or -1 when the store is full
+    int add(float x, float y) {
+        if (count == capacity) {
+            return -1;
+        }
+        int i = count++;
+        this.x[i] = x;
+        this.y[i] = y;
+        prevX[i] = x;
+        prevY[i] = y;
+        vx[i] = 0;
+        vy[i] = 0;
+        radius[i] = 0;
+        time[i] = 0;
+        baseY[i] = y;
+        flags[i] = 0;
+        return i;
+    }
+
+    // Appends the entities of the other store, as many as fit
+    void addAll(EntityStore other) {
+        int n = Math.min(other.count, capacity - count);
+        System.arraycopy(other.x, 0, x, count, n);
+        System.arraycopy(other.y, 0, y, count, n);
+        System.arraycopy(other.prevX, 0, prevX, count, n);
+        System.arraycopy(other.prevY, 0, prevY, count, n);
+        System.arraycopy(other.vx, 0, vx, count, n);
+        System.arraycopy(other.vy, 0, vy, count, n);
+        System.arraycopy(other.radius, 0, radius, count, n);
+        System.arraycopy(other.time, 0, time, count, n);
+        System.arraycopy(other.baseY, 0, baseY, count, n);
+        System.arraycopy(other.flags, 0, flags, count, n);
+        count += n;
+    }
+
+    // Swap-remove: the last entity takes the place of the removed one
+    void remove(int i) {
+        int last = --count;
+        if (i != last) {
+            x[i] = x[last];
+            y[i] = y[last];
+            prevX[i] = prevX[last];
+            prevY[i] = prevY[last];
+            vx[i] = vx[last];
+            vy[i] = vy[last];
+            radius[i] = radius[last];
+            time[i] = time[last];
+            baseY[i] = baseY[last];
+            flags[i] = flags[last];
+        }
+    }
+
+    boolean isDead(int i) {
+        return (flags[i] & DEAD) != 0;
+    }
+
+    // Removes every entity flagged DEAD
+    void removeDead() {
+        for (int i = 0; i < count; ) {
+            if (isDead(i)) {
+                remove(i);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    void savePositions() {
+        System.arraycopy(x, 0, prevX, 0, count);
+        System.arraycopy(y, 0, prevY, 0, count);
+    }
+
+    // Makes this store a copy of the other one, which must not have a larger capacity
+    void copyFrom(EntityStore other) {
+        int n = other.count;
+        System.arraycopy(other.x, 0, x, 0, n);
+        System.arraycopy(other.y, 0, y, 0, n);
+        System.arraycopy(other.prevX, 0, prevX, 0, n);
+        System.arraycopy(other.prevY, 0, prevY, 0, n);
+        System.arraycopy(other.vx, 0, vx, 0, n);
+        System.arraycopy(other.vy, 0, vy, 0, n);
+        System.arraycopy(other.radius, 0, radius, 0, n);
+        System.arraycopy(other.time, 0, time, 0, n);
+        System.arraycopy(other.baseY, 0, baseY, 0, n);
+        System.arraycopy(other.flags, 0, flags, 0, n);
+        count = n;
+    }
+
+    // Folds the live entities into a GameWorld.stateHash()
+    long hash(long h) {
+        h = GameWorld.mix(h, count);
+        for (int i = 0; i < count; i++) {
+            h = GameWorld.mix(h, Float.floatToIntBits(x[i]));
+            h = GameWorld.mix(h, Float.floatToIntBits(y[i]));
+            h = GameWorld.mix(h, Float.floatToIntBits(vx[i]));
+            h = GameWorld.mix(h, Float.floatToIntBits(vy[i]));
+            h = GameWorld.mix(h, flags[i]);
+        }
+        return h;
+    }
+
+    void clear() {
+        count = 0;
+    }
+}
@@ -0,0 +1,72 @@
+package one.cafebabe.game;
+
+// Fixed-timestep accumulator: turns the variable time between frames into a whole number
+// of equally sized simulation steps, and reports how far into the next step the frame is
+// so that rendering can interpolate between the last two simulation states.
+final class FixedStepLoop {
+    // At most this many steps are simulated per frame; any further backlog is dropped so that
+    // a slow machine runs in slow motion instead of falling ever further behind
+    static final int MAX_STEPS_PER_FRAME = 5;
+
+    interface Step {
+        void step(long stepNanos);
+    }
+
+    private final GameClock clock;
+    private final long stepNanos;
+    private final Step step;
+    private long previousTime;
+    private long accumulator = 0;
+    private int lastStepCount = 0;
+
+    // Steps per second from a --tick-rate=N argument, which must be a whole number above 1
+    static int parseTickRate(String value) {
+        try {
+            int ticksPerSecond = Integer.parseInt(value.trim());
+            if (ticksPerSecond > 1) {
+                return ticksPerSecond;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid --tick-rate, expected a whole number of steps per second above 1: " + value);
+    }
+
+    FixedStepLoop(GameClock clock, long stepNanos, Step step) {
+        this.clock = clock;
+        this.stepNanos = stepNanos;
+        this.step = step;
+        this.previousTime = clock.nanoTime();
+    }
+
+    // Runs the steps that are due and returns the render interpolation factor in [0, 1)
+    float advance() {
+        long now = clock.nanoTime();
+        accumulator += now - previousTime;
+        previousTime = now;
+
+        // Spiral-of-death cap
+        if (accumulator > MAX_STEPS_PER_FRAME * stepNanos) {
+            accumulator = MAX_STEPS_PER_FRAME * stepNanos;
+        }
+
+        int steps = 0;
+        while (accumulator >= stepNanos) {
+            step.step(stepNanos);
+            accumulator -= stepNanos;
+            steps++;
+        }
+        lastStepCount = steps;
+        return (float) accumulator / stepNanos;
+    }
+
+    // Number of steps the last advance() ran
+    int lastStepCount() {
+        return lastStepCount;
+    }
+
+    // Time left until the next step is due
+    long nanosUntilNextStep() {
+        return stepNanos - (clock.nanoTime() - previousTime) - accumulator;
+    }
+}
@@ -0,0 +1,148 @@
+package one.cafebabe.game;
+
+import java.util.Arrays;
+
+// Per-phase timers for one thread's frames: the game thread's simulation steps, or the
+// renderer's paints. Each phase duration goes into a preallocated LatencyHistogram, which is
+// summarised as p50/p99/max and cleared once per window.
+//
+// Timing only happens while the profiler is enabled or a JFR recording wants the frame's
+// event. Otherwise beginFrame() reads one flag and every phase timer returns OFF at once,
+// without reading the clock. Profiling reads System.nanoTime(), not the game clock, and
+// never affects the simulation.
+final class FrameProfiler {
+    // Start time of a phase that is not being timed
+    static final long OFF = Long.MIN_VALUE;
+    static final long DEFAULT_WINDOW_NANOS = 1_000_000_000L;
+
+    enum Phase {
+        STEP("step"),
+        FIGHTER("  fighter"),
+        BULLETS("  bullets"),
+        ENEMIES("  enemies"),
+        BOSS("  boss"),
+        ENEMY_BULLETS("  enemy bullets"),
+        EXPLOSIONS("  explosions"),
+        PARTICLES("  particles"),
+        COLLISIONS("  collisions"),
+        SNAPSHOT("snapshot"),
+        PAINT("paint");
+
+        static final int COUNT = values().length;
+
+        final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    private long windowNanos = DEFAULT_WINDOW_NANOS;
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Phase.COUNT];
+    private volatile boolean enabled;
+    private boolean active;
+    private long frameStart = OFF;
+    private long windowStart;
+
+    // Latest duration of each phase
+    final long[] last = new long[Phase.COUNT];
+
+    // Summary of the last complete window, and a counter that changes with it
+    final long[] p50 = new long[Phase.COUNT];
+    final long[] p99 = new long[Phase.COUNT];
+    final long[] max = new long[Phase.COUNT];
+    int summaries;
+
+    FrameProfiler() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    // With a window of Long.MAX_VALUE nothing is summarised until summarize() is called
+    void setWindow(long windowNanos) {
+        this.windowNanos = windowNanos;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    // May be called from any thread; takes effect with the next frame
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    // Starts a frame, timed if the profiler is enabled or recording asks for it
+    void beginFrame(boolean recording) {
+        active = enabled || recording;
+        if (!active) {
+            frameStart = OFF;
+            return;
+        }
+        Arrays.fill(last, 0);
+        frameStart = System.nanoTime();
+        if (windowStart == 0) {
+            windowStart = frameStart;
+        } else if (frameStart - windowStart >= windowNanos) {
+            summarize();
+            windowStart = frameStart;
+        }
+    }
+
+    // Ends the frame, recording its whole duration as the given phase
+    void endFrame(Phase phase) {
+        end(phase, frameStart);
+    }
+
+    // Start time for a phase of the current frame, or OFF
+    long start() {
+        return active ? System.nanoTime() : OFF;
+    }
+
+    // Records a phase that began at start and returns the start time for the next phase
+    long lap(Phase phase, long start) {
+        if (start == OFF) {
+            return OFF;
+        }
+        long now = System.nanoTime();
+        record(phase, now - start);
+        return now;
+    }
+
+    void end(Phase phase, long start) {
+        if (start != OFF) {
+            record(phase, System.nanoTime() - start);
+        }
+    }
+
+    private void record(Phase phase, long nanos) {
+        last[phase.ordinal()] = nanos;
+        histograms[phase.ordinal()].record(nanos);
+    }
+
+    // Summarises the phases recorded since the last summary and starts over
+    void summarize() {
+        for (int i = 0; i < histograms.length; i++) {
+            LatencyHistogram histogram = histograms[i];
+            p50[i] = histogram.percentile(50);
+            p99[i] = histogram.percentile(99);
+            max[i] = histogram.max();
+            histogram.reset();
+        }
+        summaries++;
+    }
+
+    // One line per phase that has samples in the last summary
+    String report() {
+        StringBuilder report = new StringBuilder(String.format("%-16s %9s %9s %9s%n", "phase (us)", "p50", "p99", "max"));
+        for (Phase phase : Phase.values()) {
+            int i = phase.ordinal();
+            if (max[i] > 0) {
+                report.append(String.format("%-16s %9.1f %9.1f %9.1f%n",
+                        phase.label, p50[i] / 1e3, p99[i] / 1e3, max[i] / 1e3));
+            }
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,66 @@
+package one.cafebabe.game;
+
+// Frame pacing statistics kept by the renderer: how many frames were presented and how many
+// were dropped, and the time from a key press to the first presented frame that shows it.
+// A frame is dropped when the game loop published it but the renderer never drew it, or
+// when the loop had to run several steps for one frame because it fell behind.
+final class FrameStats {
+    static final long REPORT_INTERVAL_NANOS = 10_000_000_000L;
+
+    private final boolean report;
+    private long presented;
+    private long lastSequence;
+    private long skippedFrames;
+    private long latencyCount, latencySum, latencyMax;
+    private long lastReportTime;
+
+    FrameStats(boolean report) {
+        this.report = report;
+    }
+
+    // Called by the renderer after it presented the given frame
+    void presented(RenderSnapshot frame, long now) {
+        if (frame.sequence == lastSequence) {
+            // Repaint of a frame that is already on screen
+            return;
+        }
+        presented++;
+        skippedFrames += frame.sequence - lastSequence - 1;
+        lastSequence = frame.sequence;
+
+        if (frame.inputNanos != 0) {
+            long latency = now - frame.inputNanos;
+            latencyCount++;
+            latencySum += latency;
+            latencyMax = Math.max(latencyMax, latency);
+        }
+
+        if (lastReportTime == 0) {
+            lastReportTime = now;
+        } else if (report && now - lastReportTime >= REPORT_INTERVAL_NANOS) {
+            lastReportTime = now;
+            System.out.println(summary(frame));
+        }
+    }
+
+    boolean isReporting() {
+        return report;
+    }
+
+    long presented() {
+        return presented;
+    }
+
+    long dropped(RenderSnapshot frame) {
+        return skippedFrames + frame.missedSteps;
+    }
+
+    String summary(RenderSnapshot frame) {
+        String text = String.format("Frames: %d presented, %d dropped", presented, dropped(frame));
+        if (latencyCount > 0) {
+            text += String.format(", input latency avg %.1f ms, max %.1f ms",
+                    latencySum / 1e6 / latencyCount, latencyMax / 1e6);
+        }
+        return text;
+    }
+}
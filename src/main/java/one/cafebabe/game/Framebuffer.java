@@ -0,0 +1,103 @@
+package one.cafebabe.game;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+// A frame drawn by writing straight into the int pixels of an image, for the software renderer.
+// Sprites are copied from the SpriteCache pixels and bullets are stamped from coverage masks,
+// in loops clipped to the frame once per primitive instead of going through the Java2D
+// pipeline for each one; the finished frame is presented with a single drawImage. Translucent
+// pixels are blended like Java2D's SrcOver, to within one step per colour channel.
+//
+// The frame is opaque, so it is a TYPE_INT_RGB image, which presents as a plain copy. Text and
+// anything else rare is drawn with Java2D into the same image through graphics().
+final class Framebuffer {
+    private static final int WIDTH = GameWorld.WIDTH;
+    private static final int HEIGHT = GameWorld.HEIGHT;
+
+    final BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+    private final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    private final Graphics2D graphics = image.createGraphics();
+
+    Graphics2D graphics() {
+        return graphics;
+    }
+
+    // Black, like the panel's background
+    void clear() {
+        Arrays.fill(pixels, 0);
+    }
+
+    // Copies a width x height rectangle at (sx, sy) of ARGB pixels srcWidth a row to (x, y)
+    void blit(int[] src, int srcWidth, int sx, int sy, int width, int height, int x, int y) {
+        int x0 = Math.max(0, x), y0 = Math.max(0, y);
+        int x1 = Math.min(WIDTH, x + width), y1 = Math.min(HEIGHT, y + height);
+        int[] pixels = this.pixels;
+        for (int row = y0; row < y1; row++) {
+            int from = (sy + row - y) * srcWidth + sx - x;
+            int to = row * WIDTH;
+            for (int col = x0; col < x1; col++) {
+                int argb = src[from + col];
+                int alpha = argb >>> 24;
+                if (alpha == 255) {
+                    pixels[to + col] = argb;
+                } else if (alpha != 0) {
+                    pixels[to + col] = blend(argb, alpha, pixels[to + col]);
+                }
+            }
+        }
+    }
+
+    // Fills a size x size square at (x, y) with rgb, as much as the mask covers each pixel
+    void fill(byte[] mask, int size, int x, int y, int rgb) {
+        int x0 = Math.max(0, x), y0 = Math.max(0, y);
+        int x1 = Math.min(WIDTH, x + size), y1 = Math.min(HEIGHT, y + size);
+        int[] pixels = this.pixels;
+        for (int row = y0; row < y1; row++) {
+            int from = (row - y) * size - x;
+            int to = row * WIDTH;
+            for (int col = x0; col < x1; col++) {
+                int coverage = mask[from + col] & 0xFF;
+                if (coverage == 255) {
+                    pixels[to + col] = rgb;
+                } else if (coverage != 0) {
+                    pixels[to + col] = blend(rgb, coverage, pixels[to + col]);
+                }
+            }
+        }
+    }
+
+    // Blends a rectangle, inclusive, of a frame-sized ARGB layer onto the frame
+    void blend(int[] layer, int minX, int minY, int maxX, int maxY) {
+        int[] pixels = this.pixels;
+        for (int row = minY; row <= maxY; row++) {
+            int offset = row * WIDTH;
+            for (int i = offset + minX; i <= offset + maxX; i++) {
+                int argb = layer[i];
+                int alpha = argb >>> 24;
+                if (alpha == 255) {
+                    pixels[i] = argb;
+                } else if (alpha != 0) {
+                    pixels[i] = blend(argb, alpha, pixels[i]);
+                }
+            }
+        }
+    }
+
+    // src over dst, channel by channel
+    private static int blend(int src, int alpha, int dst) {
+        int rest = 255 - alpha;
+        int r = mul(alpha, src >> 16 & 0xFF) + mul(rest, dst >> 16 & 0xFF);
+        int g = mul(alpha, src >> 8 & 0xFF) + mul(rest, dst >> 8 & 0xFF);
+        int b = mul(alpha, src & 0xFF) + mul(rest, dst & 0xFF);
+        return r << 16 | g << 8 | b;
+    }
+
+    // a * b / 255, rounded, for a and b from 0 to 255
+    private static int mul(int a, int b) {
+        int t = a * b + 128;
+        return (t + (t >> 8)) >> 8;
+    }
+}
@@ -0,0 +1,15 @@
+package one.cafebabe.game;
+
+// Source of time for the game loop. All frame timing goes through one clock, so tests
+// and debugging sessions can speed up, slow down or fully control the passage of time.
+interface GameClock {
+    GameClock SYSTEM = System::nanoTime;
+
+    long nanoTime();
+
+    // A clock running at the given multiple of the base clock's speed
+    static GameClock scaled(GameClock base, double factor) {
+        long origin = base.nanoTime();
+        return () -> origin + (long) ((base.nanoTime() - origin) * factor);
+    }
+}
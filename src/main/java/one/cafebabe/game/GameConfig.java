@@ -0,0 +1,163 @@
+package one.cafebabe.game;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+// The tuning of the game: how fast enemies spawn and shoot, and how many of them and of the
+// bullets may be on screen. The defaults are the normal game. Settings come from a properties
+// file given with --config=FILE, overridden by --name=value arguments with the same names,
+// for example --max-enemies=500. The load setting multiplies every count and rate, for stress
+// runs that turn the game into a bullet hell; the entity stores grow with it.
+final class GameConfig {
+    static final GameConfig DEFAULT = new GameConfig(new Properties());
+
+    static final String LOAD = "load";
+    static final String MAX_ENEMIES = "max-enemies";
+    static final String ENEMY_SPAWN_RATE = "enemy-spawn-rate";
+    static final String ENEMY_FIRE_CHANCE = "enemy-fire-chance";
+    static final String STAGE = "stage";
+    static final String MAX_BULLETS = "max-bullets";
+    static final String SHOT_INTERVAL_MS = "shot-interval-ms";
+    static final String BOSS_FIRE_CHANCE = "boss-fire-chance";
+    static final String MAX_BOSS_BULLETS = "max-boss-bullets";
+    static final String INVULNERABLE = "invulnerable";
+    static final String BULLET_CAPACITY = "bullet-capacity";
+    static final String ENEMY_CAPACITY = "enemy-capacity";
+    static final String ENEMY_BULLET_CAPACITY = "enemy-bullet-capacity";
+    static final String PARALLEL_THRESHOLD = "parallel-threshold";
+    private static final String[] NAMES = {
+            LOAD, MAX_ENEMIES, ENEMY_SPAWN_RATE, ENEMY_FIRE_CHANCE, STAGE, MAX_BULLETS, SHOT_INTERVAL_MS,
+            BOSS_FIRE_CHANCE, MAX_BOSS_BULLETS, INVULNERABLE, BULLET_CAPACITY, ENEMY_CAPACITY,
+            ENEMY_BULLET_CAPACITY, PARALLEL_THRESHOLD
+    };
+
+    // Enemies on screen, reached over the first 8 seconds of a wave, and expected spawns per step
+    final int maxEnemies;
+    final double enemySpawnRate;
+    // Chance per step that an enemy fires, from 5 seconds into the game
+    final double enemyFireChance;
+    // The Stage script that says when enemies and the boss come
+    final String stage;
+    // The fighter's bullets on screen, and the time between its shots
+    final int maxBullets;
+    final long shotIntervalMillis;
+    // Chance per step that the boss fires while there are fewer enemy bullets than the limit
+    final double bossFireChance;
+    final int maxBossBullets;
+    // Nothing hits the fighter, so a stress run keeps its load instead of ending the game
+    final boolean invulnerable;
+    // Capacity of the entity stores; spawns beyond it are dropped
+    final int bulletCapacity;
+    final int enemyCapacity;
+    final int enemyBulletCapacity;
+    // Entity stores with more entities are updated in parallel
+    final int parallelThreshold;
+
+    private final Properties properties;
+
+    GameConfig(Properties properties) {
+        this.properties = properties;
+        for (String name : properties.stringPropertyNames()) {
+            if (!isSetting(name)) {
+                throw new IllegalArgumentException("Unknown game setting: " + name);
+            }
+        }
+
+        double load = getDouble(LOAD, 1);
+        if (!(load > 0)) {
+            throw new IllegalArgumentException("Invalid value for game setting " + LOAD + ": " + load);
+        }
+        maxEnemies = (int) Math.round(getInt(MAX_ENEMIES, 5) * load);
+        enemySpawnRate = getDouble(ENEMY_SPAWN_RATE, 0.02) * load;
+        enemyFireChance = Math.min(1, getDouble(ENEMY_FIRE_CHANCE, 0.005) * load);
+        stage = properties.getProperty(STAGE, Stage.DEFAULT);
+        maxBullets = (int) Math.round(getInt(MAX_BULLETS, 2) * load);
+        shotIntervalMillis = Math.round(getInt(SHOT_INTERVAL_MS, 250) / load);
+        bossFireChance = Math.min(1, getDouble(BOSS_FIRE_CHANCE, 0.05) * load);
+        maxBossBullets = (int) Math.round(getInt(MAX_BOSS_BULLETS, 5) * load);
+        invulnerable = Boolean.parseBoolean(properties.getProperty(INVULNERABLE, "false"));
+
+        // Enough room for the limits, and for every enemy to have a few bullets in flight
+        bulletCapacity = getInt(BULLET_CAPACITY, Math.max(GameWorld.MAX_BULLETS, maxBullets));
+        enemyCapacity = getInt(ENEMY_CAPACITY, Math.max(GameWorld.MAX_ENEMIES, maxEnemies));
+        enemyBulletCapacity = getInt(ENEMY_BULLET_CAPACITY,
+                Math.max(GameWorld.MAX_ENEMY_BULLETS, 16 * maxEnemies + maxBossBullets));
+        parallelThreshold = getInt(PARALLEL_THRESHOLD, ParallelStage.DEFAULT_THRESHOLD);
+    }
+
+    static boolean isSetting(String name) {
+        for (String setting : NAMES) {
+            if (setting.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // The properties file of --config=FILE, if any, with the settings given as arguments on top
+    static GameConfig fromArgs(String[] args) throws IOException {
+        Properties properties = new Properties();
+        for (String arg : args) {
+            if (arg.startsWith("--config=")) {
+                try (Reader in = Files.newBufferedReader(Paths.get(arg.substring("--config=".length())))) {
+                    properties.load(in);
+                }
+            }
+        }
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (arg.startsWith("--") && equals > 0 && isSetting(arg.substring(2, equals))) {
+                properties.setProperty(arg.substring(2, equals), arg.substring(equals + 1));
+            }
+        }
+        return new GameConfig(properties);
+    }
+
+    // This configuration with one setting changed
+    GameConfig with(String name, Object value) {
+        Properties changed = toProperties();
+        changed.setProperty(name, String.valueOf(value));
+        return new GameConfig(changed);
+    }
+
+    // The settings this configuration was made from
+    Properties toProperties() {
+        Properties copy = new Properties();
+        copy.putAll(properties);
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d enemies (%.3g spawns/step, fire %.3g), %d bullets (%d ms), boss fire %.3g up to %d bullets",
+                maxEnemies, enemySpawnRate, enemyFireChance, maxBullets, shotIntervalMillis, bossFireChance, maxBossBullets);
+    }
+
+    // Counts and times are whole numbers; 2.5 enemies is a mistake, not 2
+    private int getInt(String name, int defaultValue) {
+        String value = properties.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for game setting " + name + ", expected a whole number: " + value);
+        }
+    }
+
+    private double getDouble(String name, double defaultValue) {
+        String value = properties.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for game setting " + name + ": " + value);
+        }
+    }
+}
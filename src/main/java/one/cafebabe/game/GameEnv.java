@@ -0,0 +1,201 @@
+package one.cafebabe.game;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Properties;
+
+// A reinforcement learning environment in the style of Gym: reset(seed) starts an episode at
+// the first step of play, and step(action) plays one action and returns the points it scored.
+// An episode is done when the game is over. Actions are Input bit masks (0 to 31).
+//
+// The observation is written into a direct native-order buffer after every reset and step,
+// so an agent can read it in place (e.g. from Python through the ByteBuffer's address)
+// without copying, and stepping allocates nothing. It is OBSERVATION_SIZE floats:
+//
+//   0       fighter x, y (the center, in playfield widths and heights, 0 to 1)
+//   2       boss present (0 or 1), boss x, y relative to the fighter, boss hits / 10
+//   6       2 spare floats, always 0
+//   8       16 enemies: present, x, y relative to the fighter
+//   56      32 enemy bullets: present, x, y relative to the fighter, vx, vy in widths per second
+//   216     8 fighter bullets: present, x, y relative to the fighter
+//
+// Each group holds the entities closest to the fighter, nearest first; unused slots are 0.
+public final class GameEnv {
+    public static final int ENEMY_SLOTS = 16;
+    public static final int ENEMY_BULLET_SLOTS = 32;
+    public static final int BULLET_SLOTS = 8;
+
+    public static final int FIGHTER = 0;
+    public static final int BOSS = 2;
+    public static final int ENEMIES = 8;
+    public static final int ENEMY_BULLETS = ENEMIES + ENEMY_SLOTS * 3;
+    public static final int BULLETS = ENEMY_BULLETS + ENEMY_BULLET_SLOTS * 5;
+    public static final int OBSERVATION_SIZE = BULLETS + BULLET_SLOTS * 3;
+
+    private final GameWorld world;
+    private final int frameSkip;
+    private final ByteBuffer observationBytes;
+    private final FloatBuffer observation;
+    private final int offset;
+    private boolean done = true;
+    private long steps;
+
+    // Closest entities, in order of distance
+    private final int[] nearest = new int[ENEMY_BULLET_SLOTS];
+    private final float[] nearestDistance = new float[ENEMY_BULLET_SLOTS];
+
+    public GameEnv() {
+        this(new Properties(), 1);
+    }
+
+    // GameConfig settings, and how many game steps each action is held for
+    public GameEnv(Properties settings, int frameSkip) {
+        this(new GameConfig(settings), frameSkip, newObservationBuffer(1), 0);
+    }
+
+    // Writes its observation into the given buffer, from the given float index on
+    GameEnv(GameConfig config, int frameSkip, ByteBuffer observationBytes, int offset) {
+        if (frameSkip < 1) {
+            throw new IllegalArgumentException("frameSkip must be at least 1: " + frameSkip);
+        }
+        try {
+            world = new GameWorld(SpriteSizes.fromResources(), SoundPlayer.SILENT, 0, config);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.frameSkip = frameSkip;
+        this.observationBytes = observationBytes;
+        this.observation = observationBytes.asFloatBuffer();
+        this.offset = offset;
+    }
+
+    static ByteBuffer newObservationBuffer(int environments) {
+        return ByteBuffer.allocateDirect(environments * OBSERVATION_SIZE * Float.BYTES).order(ByteOrder.nativeOrder());
+    }
+
+    // The buffer the observation is written to, as bytes and as floats
+    public ByteBuffer observationBytes() {
+        return observationBytes;
+    }
+
+    public FloatBuffer observation() {
+        return observation;
+    }
+
+    // Starts a new episode at the first step of play; the same seed gives the same episode
+    public void reset(long seed) {
+        world.reset(seed);
+        world.applyInput(Input.FIRE);
+        while (world.gameState != GameWorld.GameState.PLAYING) {
+            world.update(GameWorld.STEP_NANOS);
+            world.applyInput(0);
+        }
+        done = false;
+        steps = 0;
+        writeObservation();
+    }
+
+    // Holds the action for frameSkip steps, or until the game ends, and returns the points scored
+    public float step(int action) {
+        if (done) {
+            throw new IllegalStateException("The episode is over; call reset() first");
+        }
+        int scoreBefore = world.score;
+        for (int i = 0; i < frameSkip && world.gameState == GameWorld.GameState.PLAYING; i++) {
+            world.applyInput(action);
+            world.update(GameWorld.STEP_NANOS);
+            steps++;
+        }
+        done = world.gameState != GameWorld.GameState.PLAYING;
+        writeObservation();
+        return world.score - scoreBefore;
+    }
+
+    public boolean done() {
+        return done;
+    }
+
+    public int score() {
+        return world.score;
+    }
+
+    // Game steps played in this episode
+    public long steps() {
+        return steps;
+    }
+
+    private void writeObservation() {
+        FloatBuffer o = observation;
+        for (int i = offset; i < offset + OBSERVATION_SIZE; i++) {
+            o.put(i, 0);
+        }
+
+        GameWorld.Fighter fighter = world.fighter;
+        float fx = fighter.x + fighter.width / 2f;
+        float fy = fighter.y + fighter.height / 2f;
+        o.put(offset + FIGHTER, fx / GameWorld.WIDTH);
+        o.put(offset + FIGHTER + 1, fy / GameWorld.HEIGHT);
+
+        GameWorld.Boss boss = world.boss;
+        if (boss != null) {
+            o.put(offset + BOSS, 1);
+            o.put(offset + BOSS + 1, (boss.x + boss.width / 2f - fx) / GameWorld.WIDTH);
+            o.put(offset + BOSS + 2, (boss.y + boss.height / 2f - fy) / GameWorld.HEIGHT);
+            o.put(offset + BOSS + 3, boss.getHits() / 10f);
+        }
+
+        EntityStore enemies = world.enemies;
+        float halfWidth = world.enemyWidth / 2f, halfHeight = world.enemyHeight / 2f;
+        int n = selectNearest(enemies, fx - halfWidth, fy - halfHeight, ENEMY_SLOTS);
+        for (int k = 0, at = offset + ENEMIES; k < n; k++, at += 3) {
+            int i = nearest[k];
+            o.put(at, 1);
+            o.put(at + 1, (enemies.x[i] + halfWidth - fx) / GameWorld.WIDTH);
+            o.put(at + 2, (enemies.y[i] + halfHeight - fy) / GameWorld.HEIGHT);
+        }
+
+        EntityStore enemyBullets = world.enemyBullets;
+        n = selectNearest(enemyBullets, fx, fy, ENEMY_BULLET_SLOTS);
+        for (int k = 0, at = offset + ENEMY_BULLETS; k < n; k++, at += 5) {
+            int i = nearest[k];
+            o.put(at, 1);
+            o.put(at + 1, (enemyBullets.x[i] - fx) / GameWorld.WIDTH);
+            o.put(at + 2, (enemyBullets.y[i] - fy) / GameWorld.HEIGHT);
+            o.put(at + 3, enemyBullets.vx[i] / GameWorld.WIDTH);
+            o.put(at + 4, enemyBullets.vy[i] / GameWorld.HEIGHT);
+        }
+
+        EntityStore bullets = world.bullets;
+        n = selectNearest(bullets, fx, fy, BULLET_SLOTS);
+        for (int k = 0, at = offset + BULLETS; k < n; k++, at += 3) {
+            int i = nearest[k];
+            o.put(at, 1);
+            o.put(at + 1, (bullets.x[i] - fx) / GameWorld.WIDTH);
+            o.put(at + 2, (bullets.y[i] - fy) / GameWorld.HEIGHT);
+        }
+    }
+
+    // Fills nearest with the indices of up to k entities closest to (x, y), nearest first, by
+    // insertion into a sorted list of k
+    private int selectNearest(EntityStore store, float x, float y, int k) {
+        int n = 0;
+        for (int i = 0; i < store.count; i++) {
+            float dx = store.x[i] - x, dy = store.y[i] - y;
+            float distance = dx * dx + dy * dy;
+            if (n == k && distance >= nearestDistance[k - 1]) {
+                continue;
+            }
+            int j = n < k ? n++ : k - 1;
+            for (; j > 0 && nearestDistance[j - 1] > distance; j--) {
+                nearest[j] = nearest[j - 1];
+                nearestDistance[j] = nearestDistance[j - 1];
+            }
+            nearest[j] = i;
+            nearestDistance[j] = distance;
+        }
+        return n;
+    }
+}
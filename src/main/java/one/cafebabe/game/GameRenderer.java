@@ -0,0 +1,354 @@
+package one.cafebabe.game;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+// Draws one RenderSnapshot with Java2D: the title screen, the game and the game over screen.
+// It only reads the snapshot, so it can draw on any thread and into any Graphics2D, be it
+// the panel, an active rendering back buffer or an offscreen image. How much detail it draws
+// comes from its QualityController, which is told how long each frame took; the default one
+// always draws everything.
+//
+// In software mode the sprites, bullets and particles are written straight into the pixels of
+// a Framebuffer, text and the profiler overlay are drawn into it with Java2D, and the finished
+// frame is copied onto the Graphics2D with one drawImage. The result matches Java2D's to
+// within a step or two per colour channel (see SoftwareRendererTest).
+final class GameRenderer {
+    private static final int WIDTH = GameWorld.WIDTH;
+    private static final int HEIGHT = GameWorld.HEIGHT;
+
+    // Fonts and fixed texts, created once instead of on every frame
+    private static final Font TITLE_FONT = new Font("Arial", Font.BOLD, 36);
+    private static final Font INSTRUCTIONS_FONT = new Font("Arial", Font.PLAIN, 18);
+    private static final Font SCORE_FONT = new Font("Arial", Font.BOLD, 18);
+    private static final Font GAME_OVER_FONT = new Font("Arial", Font.BOLD, 48);
+    private static final Font FINAL_SCORE_FONT = new Font("Arial", Font.BOLD, 36);
+    private static final Font RESTART_FONT = new Font("Arial", Font.PLAIN, 24);
+    private static final String TITLE_TEXT = "The Junie Fighter";
+    private static final String INSTRUCTIONS_TEXT = "Press SPACE to start";
+    private static final String GAME_OVER_TEXT = "GAME OVER";
+    private static final String RESTART_TEXT = "Press SPACE to restart";
+    private static final Font PROFILE_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+    private static final Color PROFILE_BACKGROUND = new Color(0, 0, 0, 160);
+
+    private final SpriteCache sprites;
+    private final ParticleRenderer particles = new ParticleRenderer();
+    private QualityController quality = QualityController.fixed(QualityController.Level.HIGH);
+
+    // The detail of the frame being drawn, and the bullets pre-rendered for BULLET_SPRITES
+    private QualityController.Level level;
+    private final BufferedImage[] bulletSprites = new BufferedImage[2];
+
+    // Software mode: the frame being drawn, and bullet coverage masks, smooth and hard
+    private Framebuffer framebuffer;
+    private final byte[][] bulletMasks = new byte[2][];
+    private final int[] bulletMaskSizes = new int[2];
+
+    // The frame being drawn
+    private RenderSnapshot frame;
+
+    // HUD text, rebuilt only when the score changes
+    private int hudScore = -1;
+    private String scoreText;
+
+    // Paint timing, and the profiler overlay text, rebuilt only when a summary changes
+    final FrameProfiler profiler = new FrameProfiler();
+    private final String[] profileLines = new String[FrameProfiler.Phase.COUNT + 1];
+    private int profileSummaries = -1;
+    private int paintSummaries = -1;
+
+    GameRenderer(SpriteCache sprites) {
+        this.sprites = sprites;
+    }
+
+    // Call before drawing from another thread
+    void setQuality(QualityController quality) {
+        this.quality = quality;
+    }
+
+    // Call before drawing from another thread
+    void setSoftware(boolean software) {
+        framebuffer = software ? new Framebuffer() : null;
+    }
+
+    void render(Graphics2D target, RenderSnapshot frame) {
+        long start = System.nanoTime();
+        PaintEvent event = PaintEvent.beginIfRecording();
+        profiler.setEnabled(frame.profiling);
+        profiler.beginFrame(event != null);
+        this.frame = frame;
+        level = quality.level();
+        Graphics2D g2d = target;
+        if (framebuffer != null) {
+            framebuffer.clear();
+            g2d = framebuffer.graphics();
+        }
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                level.antialiasing ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+
+        switch (frame.gameState) {
+            case TITLE:
+                drawTitle(g2d);
+                break;
+            case PLAYING:
+                drawGame(g2d);
+                break;
+            case GAME_OVER:
+                drawGameOver(g2d);
+                break;
+        }
+
+        if (frame.profiling) {
+            drawProfile(g2d);
+        }
+        if (framebuffer != null) {
+            target.drawImage(framebuffer.image, 0, 0, null);
+        }
+        profiler.endFrame(FrameProfiler.Phase.PAINT);
+        if (event != null) {
+            event.entities = frame.bullets.count + frame.enemies.count + frame.enemyBullets.count;
+            event.commit();
+        }
+        quality.painted(System.nanoTime() - start);
+    }
+
+    private void drawTitle(Graphics2D g2d) {
+        // Draw title
+        g2d.setColor(Color.WHITE);
+        g2d.setFont(TITLE_FONT);
+        FontMetrics fm = g2d.getFontMetrics();
+        int titleWidth = fm.stringWidth(TITLE_TEXT);
+        g2d.drawString(TITLE_TEXT, (WIDTH - titleWidth) / 2, 100);
+
+        // Draw fighter, offset by its source image size
+        drawSprite(g2d, sprites.fighter,
+                (int) lerp(frame.prevTitleFighterX, frame.titleFighterX) - sprites.fighter.width / 2,
+                (int) lerp(frame.prevTitleFighterY, frame.titleFighterY) - sprites.fighter.height / 4);
+
+        // Draw instructions
+        if (!frame.titleTransitioning) {
+            g2d.setFont(INSTRUCTIONS_FONT);
+            int instructionsWidth = g2d.getFontMetrics().stringWidth(INSTRUCTIONS_TEXT);
+            g2d.drawString(INSTRUCTIONS_TEXT, (WIDTH - instructionsWidth) / 2, HEIGHT - 100);
+        }
+    }
+
+    private void drawGame(Graphics2D g2d) {
+        // Draw score
+        g2d.setColor(Color.WHITE);
+        g2d.setFont(SCORE_FONT);
+        g2d.drawString(scoreText(), 20, 30);
+
+        // Draw fighter
+        drawSprite(g2d, sprites.fighter,
+                (int) lerp(frame.prevFighterX, frame.fighterX),
+                (int) lerp(frame.prevFighterY, frame.fighterY));
+
+        // Draw bullets
+        drawBullets(g2d, frame.bullets, Color.WHITE, 0);
+
+        // Draw enemies
+        EntityStore enemies = frame.enemies;
+        for (int i = 0; i < enemies.count; i++) {
+            drawSprite(g2d, sprites.enemy,
+                    (int) lerp(enemies.prevX[i], enemies.x[i]),
+                    (int) lerp(enemies.prevY[i], enemies.y[i]));
+        }
+
+        // Draw boss
+        if (frame.bossVisible) {
+            drawSprite(g2d, sprites.boss,
+                    (int) lerp(frame.prevBossX, frame.bossX),
+                    (int) lerp(frame.prevBossY, frame.bossY));
+        }
+
+        // Draw enemy bullets
+        drawBullets(g2d, frame.enemyBullets, Color.RED, 1);
+
+        // Draw explosions and particles
+        drawExplosions(g2d);
+        drawParticles(g2d);
+    }
+
+    private void drawSprite(Graphics2D g2d, SpriteCache.Sprite sprite, int x, int y) {
+        if (framebuffer == null) {
+            sprite.draw(g2d, x, y);
+            return;
+        }
+        int[] sheet = sprites.pixels();
+        if (sheet != null) {
+            framebuffer.blit(sheet, sprites.sheetWidth(), sprite.x, sprite.y, sprite.width, sprite.height, x, y);
+        }
+    }
+
+    private void drawParticles(Graphics2D g2d) {
+        if (framebuffer != null) {
+            particles.draw(framebuffer, frame.particles, frame.alpha, level.maxParticles);
+        } else {
+            particles.draw(g2d, frame.particles, frame.alpha, level.maxParticles);
+        }
+    }
+
+    private void drawBullets(Graphics2D g2d, EntityStore bullets, Color color, int sprite) {
+        if (framebuffer != null) {
+            // Bullet sprites are antialiased circles too
+            int mask = level.antialiasing || level.bulletSprites ? 0 : 1;
+            int rgb = color.getRGB();
+            for (int i = 0; i < bullets.count; i++) {
+                float radius = bullets.radius[i];
+                int size = (int) (radius * 2);
+                if (size > 0) {
+                    framebuffer.fill(bulletMask(mask, size), size,
+                            (int) (lerp(bullets.prevX[i], bullets.x[i]) - radius),
+                            (int) (lerp(bullets.prevY[i], bullets.y[i]) - radius), rgb);
+                }
+            }
+            return;
+        }
+        g2d.setColor(color);
+        for (int i = 0; i < bullets.count; i++) {
+            float radius = bullets.radius[i];
+            int x = (int) (lerp(bullets.prevX[i], bullets.x[i]) - radius);
+            int y = (int) (lerp(bullets.prevY[i], bullets.y[i]) - radius);
+            int size = (int) (radius * 2);
+            BufferedImage image = level.bulletSprites ? bulletSprite(sprite, color, size) : null;
+            if (image != null) {
+                g2d.drawImage(image, x, y, null);
+            } else {
+                g2d.fillOval(x, y, size, size);
+            }
+        }
+    }
+
+    // An antialiased filled circle of the given size and colour, drawn once and kept until a
+    // bullet of another size comes along
+    private BufferedImage bulletSprite(int sprite, Color color, int size) {
+        BufferedImage image = bulletSprites[sprite];
+        if (image == null || image.getWidth() != size) {
+            if (size <= 0) {
+                return null;
+            }
+            image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB_PRE);
+            Graphics2D g = image.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setColor(color);
+            g.fillOval(0, 0, size, size);
+            g.dispose();
+            bulletSprites[sprite] = image;
+        }
+        return image;
+    }
+
+    // How much of each pixel of a size x size square fillOval covers, smooth (0) or hard (1),
+    // rasterised by Java2D once and kept until a bullet of another size comes along
+    private byte[] bulletMask(int mask, int size) {
+        if (bulletMaskSizes[mask] != size) {
+            BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = image.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                    mask == 0 ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+            g.setColor(Color.WHITE);
+            g.fillOval(0, 0, size, size);
+            g.dispose();
+            byte[] coverage = new byte[size * size];
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    coverage[y * size + x] = (byte) (image.getRGB(x, y) >>> 24);
+                }
+            }
+            bulletMasks[mask] = coverage;
+            bulletMaskSizes[mask] = size;
+        }
+        return bulletMasks[mask];
+    }
+
+    private void drawExplosions(Graphics2D g2d) {
+        if (!level.explosionSprites) {
+            return;
+        }
+        for (int i = 0; i < frame.explosionCount; i++) {
+            int x = (int) frame.explosionX[i];
+            int y = (int) frame.explosionY[i];
+            SpriteCache.Sprite sprite = sprites.explosion(frame.explosionFrame[i],
+                    frame.explosionWidth[i], frame.explosionHeight[i]);
+            if (sprite != null) {
+                drawSprite(g2d, sprite, x, y);
+            } else {
+                sprites.drawExplosion(g2d, frame.explosionFrame[i], x, y,
+                        frame.explosionWidth[i], frame.explosionHeight[i]);
+            }
+        }
+    }
+
+    private void drawGameOver(Graphics2D g2d) {
+        // Draw remaining explosions and particles
+        drawExplosions(g2d);
+        drawParticles(g2d);
+
+        // Draw game over text
+        g2d.setColor(Color.WHITE);
+        g2d.setFont(GAME_OVER_FONT);
+        FontMetrics fm = g2d.getFontMetrics();
+        int textWidth = fm.stringWidth(GAME_OVER_TEXT);
+        g2d.drawString(GAME_OVER_TEXT, (WIDTH - textWidth) / 2, HEIGHT / 2 - 50);
+
+        // Draw score
+        g2d.setFont(FINAL_SCORE_FONT);
+        fm = g2d.getFontMetrics();
+        String scoreText = scoreText();
+        textWidth = fm.stringWidth(scoreText);
+        g2d.drawString(scoreText, (WIDTH - textWidth) / 2, HEIGHT / 2 + 20);
+
+        // Draw restart instructions (after 3 seconds)
+        if (frame.canRestart) {
+            g2d.setFont(RESTART_FONT);
+            textWidth = fm.stringWidth(RESTART_TEXT);
+            g2d.drawString(RESTART_TEXT, (WIDTH - textWidth) / 2, HEIGHT / 2 + 80);
+        }
+    }
+
+    // Per-phase p50/p99/max in microseconds, in the bottom left corner
+    private void drawProfile(Graphics2D g2d) {
+        if (frame.profileSummaries != profileSummaries || profiler.summaries != paintSummaries) {
+            profileSummaries = frame.profileSummaries;
+            paintSummaries = profiler.summaries;
+            profileLines[0] = String.format("%-15s %7s %7s %7s", "phase (us)", "p50", "p99", "max");
+            for (FrameProfiler.Phase phase : FrameProfiler.Phase.values()) {
+                int i = phase.ordinal();
+                boolean paint = phase == FrameProfiler.Phase.PAINT;
+                profileLines[i + 1] = String.format("%-15s %7.1f %7.1f %7.1f", phase.label,
+                        (paint ? profiler.p50[i] : frame.profileP50[i]) / 1e3,
+                        (paint ? profiler.p99[i] : frame.profileP99[i]) / 1e3,
+                        (paint ? profiler.max[i] : frame.profileMax[i]) / 1e3);
+            }
+        }
+
+        g2d.setFont(PROFILE_FONT);
+        int lineHeight = g2d.getFontMetrics().getHeight();
+        int top = HEIGHT - 10 - profileLines.length * lineHeight;
+        g2d.setColor(PROFILE_BACKGROUND);
+        g2d.fillRect(5, top - 5, 300, profileLines.length * lineHeight + 10);
+        g2d.setColor(Color.GREEN);
+        for (int i = 0; i < profileLines.length; i++) {
+            g2d.drawString(profileLines[i], 10, top + (i + 1) * lineHeight - 3);
+        }
+    }
+
+    private String scoreText() {
+        int score = frame.score;
+        if (score != hudScore) {
+            hudScore = score;
+            scoreText = "Score: " + score;
+        }
+        return scoreText;
+    }
+
+    // Position between the previous and the current simulation step
+    private float lerp(float previous, float current) {
+        return previous + (current - previous) * frame.alpha;
+    }
+}
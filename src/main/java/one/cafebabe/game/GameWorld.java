@@ -0,0 +1,878 @@
+package one.cafebabe.game;
+
+import java.awt.event.KeyEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+// Game simulation: title transition, fighter, enemies, boss, bullets, explosions, particles
+// and collisions. It has no dependency on Swing, images or the audio device, so it can be
+// stepped headless and faster than real time. All time values are simulation time in
+// nanoseconds, advanced by update(); the world never reads the wall clock. Its randomness
+// comes from the seed, through one Random and per-entity random numbers, and its input from
+// applyInput() between steps, so the same seed and input always play out the same way. That
+// also holds when large entity stores are updated in parallel.
+//
+// A steady-state step allocates nothing. Bullets, enemies and particles live in
+// struct-of-arrays stores with O(1) swap-remove; the few remaining objects come from pools
+// and are returned to them when they leave the game, and all lists are walked by index.
+class GameWorld {
+    // Constants
+    static final int WIDTH = 600;
+    static final int HEIGHT = 600;
+    static final int TICKS_PER_SECOND = 60;
+    static final long STEP_NANOS = 1_000_000_000L / TICKS_PER_SECOND;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    // Default capacity of the entity stores; spawns beyond it are dropped
+    static final int MAX_BULLETS = 1024;
+    static final int MAX_ENEMIES = 1024;
+    static final int MAX_ENEMY_BULLETS = 4096;
+    // Particles on screen at once; bursts shrink as the pool fills up
+    static final int MAX_PARTICLES = 4096;
+
+    // Bullet and enemy properties
+    private static final float BULLET_SPEED = 400;
+    private static final float BULLET_RADIUS = 5;
+    private static final float ENEMY_SPEED = 100;
+    private static final float ENEMY_BULLET_SPEED = 200;
+    private static final float ENEMY_BULLET_RADIUS = 5;
+
+    // Game states
+    enum GameState {
+        TITLE, PLAYING, GAME_OVER
+    }
+
+    // Game variables
+    GameState gameState = GameState.TITLE;
+    int score = 0;
+    private long time = 0;
+    private long gameStartTime = 0;
+    private long gameOverTime = 0;
+    long seed;
+    final GameConfig config;
+    private final Random random;
+    private final SpriteSizes sizes;
+    private final SoundPlayer sounds;
+
+    // Boss defeat fanfare: se_hit_010 and se_hit_012 alternate three times each, 200 ms apart
+    private int bossDefeatSoundsLeft = 0;
+    private long nextBossDefeatSoundTime = 0;
+
+    // Input handling: the Input buttons of the current step
+    private int buttons = 0;
+
+    // Game objects
+    Fighter fighter;
+    final EntityStore bullets;
+    final EntityStore enemies;
+    final EntityStore enemyBullets;
+    final int enemyWidth, enemyHeight;
+    Boss boss;
+    final List<Explosion> explosions = new ArrayList<>();
+    final ParticleSystem particles = new ParticleSystem(MAX_PARTICLES);
+    private final Boss bossInstance;
+
+    // When enemies and the boss come: the stage's events, and the random wave they started
+    private final Stage stage;
+    private long waveStart, waveEnd;
+    private double nextWaveSpawn;
+    private boolean bossDue;
+
+    // Collision broad phase, used once there are enough bullet/enemy pairs to pay for it
+    private static final int BROAD_PHASE_MIN_PAIRS = 256;
+    private final SpatialGrid enemyGrid = new SpatialGrid(WIDTH, HEIGHT);
+
+    // Per-phase step timing, off unless enabled or recorded with JFR
+    final FrameProfiler profiler = new FrameProfiler();
+
+    // Entity updates, spread over several cores for large stores
+    private final ParallelStage bulletStage;
+    private final ParallelStage enemyStage;
+    private final ParallelStage enemyBulletStage;
+    private final ParallelStage.ChunkUpdate moveBullets = this::moveBullets;
+    private final ParallelStage.ChunkUpdate moveEnemies = this::moveEnemies;
+    private final ParallelStage.ChunkUpdate moveEnemyBullets = this::moveEnemyBullets;
+    // The step the chunk updates belong to
+    private float stepDeltaTime;
+    private long stepGameTime;
+
+    // Recycled game objects
+    private final Pool<Explosion> explosionPool = new Pool<>(Explosion::new);
+
+    // Title screen variables
+    float titleFighterX = WIDTH / 2.0f;
+    float titleFighterY = HEIGHT / 2.0f + 50;
+    float prevTitleFighterX = titleFighterX;
+    float prevTitleFighterY = titleFighterY;
+    private float titleFighterVelocityX = 0;
+    boolean titleTransitioning = false;
+
+    GameWorld(SpriteSizes sizes, SoundPlayer sounds) {
+        this(sizes, sounds, new Random().nextLong());
+    }
+
+    GameWorld(SpriteSizes sizes, SoundPlayer sounds, long seed) {
+        this(sizes, sounds, seed, GameConfig.DEFAULT);
+    }
+
+    // Room for more entities than the game ever has, for benchmarks
+    GameWorld(SpriteSizes sizes, SoundPlayer sounds, long seed, int maxBullets, int maxEnemies, int maxEnemyBullets) {
+        this(sizes, sounds, seed, GameConfig.DEFAULT
+                .with(GameConfig.BULLET_CAPACITY, maxBullets)
+                .with(GameConfig.ENEMY_CAPACITY, maxEnemies)
+                .with(GameConfig.ENEMY_BULLET_CAPACITY, maxEnemyBullets));
+    }
+
+    GameWorld(SpriteSizes sizes, SoundPlayer sounds, long seed, GameConfig config) {
+        this.sizes = sizes;
+        this.sounds = sounds;
+        this.seed = seed;
+        this.config = config;
+        this.random = new Random(seed);
+        bullets = new EntityStore(config.bulletCapacity);
+        enemies = new EntityStore(config.enemyCapacity);
+        enemyBullets = new EntityStore(config.enemyBulletCapacity);
+        bulletStage = new ParallelStage(config.parallelThreshold, 0);
+        enemyStage = new ParallelStage(config.parallelThreshold, config.enemyBulletCapacity);
+        enemyBulletStage = new ParallelStage(config.parallelThreshold, 0);
+        enemyWidth = sizes.enemyWidth * 2;
+        enemyHeight = sizes.enemyHeight * 2;
+        fighter = new Fighter();
+        fighter.init(WIDTH / 4, HEIGHT / 2);
+        bossInstance = new Boss();
+        particles.reseed(seed);
+        stage = Stage.load(config.stage);
+    }
+
+    // Puts the world back to how a new world with the given seed starts, reusing its objects
+    void reset(long seed) {
+        this.seed = seed;
+        random.setSeed(seed);
+        particles.reseed(seed);
+        time = 0;
+        gameStartTime = 0;
+        gameOverTime = 0;
+        bossDefeatSoundsLeft = 0;
+        nextBossDefeatSoundTime = 0;
+        buttons = 0;
+        waveStart = 0;
+        waveEnd = 0;
+        nextWaveSpawn = 0;
+        bossDue = false;
+        resetGame();
+    }
+
+    // Sets the input for the next step: the held arrow keys, and FIRE to press space once
+    void applyInput(int buttons) {
+        this.buttons = buttons;
+        if ((buttons & Input.FIRE) != 0) {
+            handleKeyPress(KeyEvent.VK_SPACE);
+        }
+    }
+
+    void handleKeyPress(int keyCode) {
+        if (keyCode == KeyEvent.VK_SPACE) {
+            switch (gameState) {
+                case TITLE:
+                    if (!titleTransitioning) {
+                        sounds.play(SoundEffect.JINGLE);
+                        titleTransitioning = true;
+                    }
+                    break;
+                case PLAYING:
+                    fighter.shoot();
+                    break;
+                case GAME_OVER:
+                    if (canRestart()) {
+                        resetGame();
+                    }
+                    break;
+            }
+        }
+    }
+
+    // True once the game over screen has been shown for 3 seconds
+    boolean canRestart() {
+        return time - gameOverTime > 3000 * NANOS_PER_MILLI;
+    }
+
+    private void resetGame() {
+        gameState = GameState.TITLE;
+        score = 0;
+        titleFighterX = WIDTH / 2.0f;
+        titleFighterY = HEIGHT / 2.0f + 50;
+        prevTitleFighterX = titleFighterX;
+        prevTitleFighterY = titleFighterY;
+        titleFighterVelocityX = 0;
+        titleTransitioning = false;
+        fighter.init(WIDTH / 4, HEIGHT / 2);
+        bullets.clear();
+        enemies.clear();
+        enemyBullets.clear();
+        boss = null;
+        explosionPool.releaseAll(explosions);
+        particles.clear();
+    }
+
+    // Advances the simulation by one step; the game loop calls this with a fixed step
+    void update(long elapsedNanos) {
+        StepEvent event = StepEvent.beginIfRecording();
+        profiler.beginFrame(event != null);
+        time += elapsedNanos;
+        float deltaTime = elapsedNanos / 1_000_000_000.0f;
+
+        savePositions();
+        updateBossDefeatSound();
+
+        switch (gameState) {
+            case TITLE:
+                updateTitle(deltaTime);
+                break;
+            case PLAYING:
+                updatePlaying(deltaTime);
+                break;
+            case GAME_OVER:
+                updateGameOver(deltaTime);
+                break;
+        }
+
+        profiler.endFrame(FrameProfiler.Phase.STEP);
+        if (event != null) {
+            event.commit(gameState, profiler);
+        }
+    }
+
+    private void updateBossDefeatSound() {
+        if (bossDefeatSoundsLeft > 0 && time >= nextBossDefeatSoundTime) {
+            sounds.play(bossDefeatSoundsLeft % 2 == 0 ? SoundEffect.BOSS_DEFEAT_1 : SoundEffect.BOSS_DEFEAT_2);
+            bossDefeatSoundsLeft--;
+            nextBossDefeatSoundTime += 200 * NANOS_PER_MILLI;
+        }
+    }
+
+    private void updateTitle(float deltaTime) {
+        if (titleTransitioning) {
+            titleFighterVelocityX += 200 * deltaTime;
+            titleFighterX += titleFighterVelocityX * deltaTime;
+
+            if (titleFighterX > WIDTH + 50) {
+                gameState = GameState.PLAYING;
+                gameStartTime = time;
+                stage.restart();
+                waveEnd = 0;
+                bossDue = false;
+                fighter.init(WIDTH / 4, HEIGHT / 2);
+            }
+        } else {
+            // Make the fighter float up and down slightly. StrictMath gives the same result
+            // on every JVM, which replays depend on.
+            titleFighterY += StrictMath.sin(time / (500.0 * NANOS_PER_MILLI)) * 0.5;
+        }
+    }
+
+    void updatePlaying(float deltaTime) {
+        long gameTime = (time - gameStartTime) / NANOS_PER_MILLI;
+        long t = profiler.start();
+
+        // Update fighter
+        updateFighter(deltaTime);
+        t = profiler.lap(FrameProfiler.Phase.FIGHTER, t);
+
+        // Update bullets
+        updateBullets(deltaTime);
+        t = profiler.lap(FrameProfiler.Phase.BULLETS, t);
+
+        // Update enemies
+        updateEnemies(deltaTime, gameTime);
+        t = profiler.lap(FrameProfiler.Phase.ENEMIES, t);
+
+        // Update boss
+        updateBoss(deltaTime, gameTime);
+        t = profiler.lap(FrameProfiler.Phase.BOSS, t);
+
+        // Update enemy bullets
+        updateEnemyBullets(deltaTime);
+        t = profiler.lap(FrameProfiler.Phase.ENEMY_BULLETS, t);
+
+        // Update explosions
+        updateExplosions(deltaTime);
+        t = profiler.lap(FrameProfiler.Phase.EXPLOSIONS, t);
+
+        // Update particles
+        particles.update(deltaTime);
+        t = profiler.lap(FrameProfiler.Phase.PARTICLES, t);
+
+        // Check collisions
+        checkCollisions();
+        profiler.end(FrameProfiler.Phase.COLLISIONS, t);
+    }
+
+    // Remember where everything was at the start of the step, for render interpolation
+    private void savePositions() {
+        prevTitleFighterX = titleFighterX;
+        prevTitleFighterY = titleFighterY;
+        fighter.prevX = fighter.x;
+        fighter.prevY = fighter.y;
+        bullets.savePositions();
+        enemies.savePositions();
+        enemyBullets.savePositions();
+        if (boss != null) {
+            boss.prevX = boss.x;
+            boss.prevY = boss.y;
+        }
+    }
+
+    private void updateFighter(float deltaTime) {
+        // Movement
+        int dx = 0, dy = 0;
+
+        if ((buttons & Input.UP) != 0) dy -= 1;
+        if ((buttons & Input.DOWN) != 0) dy += 1;
+        if ((buttons & Input.LEFT) != 0) dx -= 1;
+        if ((buttons & Input.RIGHT) != 0) dx += 1;
+
+        fighter.move(dx, dy, deltaTime);
+
+        // Keep fighter within bounds
+        fighter.x = Math.max(0, Math.min(WIDTH - fighter.width, fighter.x));
+        fighter.y = Math.max(0, Math.min(HEIGHT - fighter.height, fighter.y));
+    }
+
+    private void updateBullets(float deltaTime) {
+        stepDeltaTime = deltaTime;
+        bulletStage.run(bullets, moveBullets, null);
+    }
+
+    private void moveBullets(int from, int to, EntityStore spawns) {
+        EntityStore b = bullets;
+        float deltaTime = stepDeltaTime;
+        for (int i = from; i < to; i++) {
+            b.x[i] += b.vx[i] * deltaTime;
+
+            if (b.x[i] > WIDTH) {
+                b.flags[i] |= EntityStore.DEAD;
+            }
+        }
+    }
+
+    void updateEnemies(float deltaTime, long gameTime) {
+        EntityStore e = enemies;
+
+        // Fire the stage events that are due
+        for (int event; (event = stage.poll(gameTime)) >= 0; ) {
+            switch (stage.type(event)) {
+                case Stage.ENEMY:
+                    long y = stage.arg(event);
+                    addEnemy(y >= 0 ? y : random.nextInt(HEIGHT - 40) + 20);
+                    break;
+                case Stage.WAVE:
+                    waveStart = gameTime;
+                    waveEnd = stage.arg(event) == Long.MAX_VALUE ? Long.MAX_VALUE : gameTime + stage.arg(event);
+                    nextWaveSpawn = gameTime + nextSpawnGap();
+                    break;
+                case Stage.BOSS:
+                    bossDue = true;
+                    break;
+            }
+        }
+
+        // Spawn the enemies of a wave. The time to the next spawn is drawn when an enemy spawns,
+        // instead of rolling for a spawn every step. More enemies are allowed every 2 seconds.
+        while (gameTime < waveEnd && nextWaveSpawn <= gameTime) {
+            int maxEnemies = config.maxEnemies;
+            long allowed = Math.min(maxEnemies, Math.max(1, (1 + (gameTime - waveStart) / 2000) * maxEnemies / 5));
+            if (e.count < allowed) {
+                addEnemy(random.nextInt(HEIGHT - 40) + 20);
+            }
+            nextWaveSpawn += nextSpawnGap();
+        }
+
+        // Update existing enemies
+        stepDeltaTime = deltaTime;
+        stepGameTime = gameTime;
+        enemyStage.run(e, moveEnemies, enemyBullets);
+    }
+
+    private void addEnemy(float y) {
+        int i = enemies.add(WIDTH + 20, y);
+        if (i >= 0) {
+            enemies.vx[i] = -ENEMY_SPEED;
+        }
+    }
+
+    // Milliseconds to the next enemy of a wave. Spawns at the configured rate per step form a
+    // Poisson process, so the gaps between them are exponentially distributed.
+    private double nextSpawnGap() {
+        double rate = config.enemySpawnRate * TICKS_PER_SECOND / 1000.0;
+        return rate > 0 ? -StrictMath.log(1 - random.nextDouble()) / rate : Double.POSITIVE_INFINITY;
+    }
+
+    private void moveEnemies(int from, int to, EntityStore spawns) {
+        EntityStore e = enemies;
+        float deltaTime = stepDeltaTime;
+        for (int i = from; i < to; i++) {
+            e.time[i] += deltaTime;
+            e.x[i] += e.vx[i] * deltaTime;
+            e.y[i] = e.baseY[i] + (float) StrictMath.sin(e.time[i] * 3) * 50;
+
+            // Remove enemies that have left the screen
+            if (e.x[i] < -enemyWidth) {
+                e.flags[i] |= EntityStore.DEAD;
+                continue;
+            }
+
+            // Enemy shooting (after 5 seconds)
+            if (stepGameTime > 5000 && entityRandom(i) < config.enemyFireChance) {
+                addEnemyBullet(spawns, e.x[i], e.y[i] + enemyHeight / 2, -ENEMY_BULLET_SPEED, 0);
+            }
+        }
+    }
+
+    // A random number in [0, 1) that depends only on the seed, the step and the entity index,
+    // so that entities can be updated in any order and on any thread and still draw the same
+    // numbers (SplitMix64 finalizer)
+    private float entityRandom(int index) {
+        long z = seed + time * 0x9E3779B97F4A7C15L + index * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z ^= z >>> 31;
+        return (z >>> 40) * 0x1.0p-24f;
+    }
+
+    private void addEnemyBullet(float x, float y, float velocityX, float velocityY) {
+        addEnemyBullet(enemyBullets, x, y, velocityX, velocityY);
+    }
+
+    private static void addEnemyBullet(EntityStore store, float x, float y, float velocityX, float velocityY) {
+        int i = store.add(x, y);
+        if (i >= 0) {
+            store.vx[i] = velocityX;
+            store.vy[i] = velocityY;
+            store.radius[i] = ENEMY_BULLET_RADIUS;
+        }
+    }
+
+    private void updateBoss(float deltaTime, long gameTime) {
+        // The boss comes when the stage says so and the enemies are gone
+        if (bossDue && boss == null && enemies.count == 0) {
+            boss = bossInstance.init(WIDTH + 50, HEIGHT / 2);
+            bossDue = false;
+        }
+
+        if (boss != null) {
+            boss.update(deltaTime);
+
+            // Boss shooting
+            if (random.nextFloat() < config.bossFireChance && enemyBullets.count < config.maxBossBullets) {
+                float targetX = fighter.x + random.nextInt(100) - 50;
+                float targetY = fighter.y + random.nextInt(100) - 50;
+
+                float dx = targetX - boss.x;
+                float dy = targetY - boss.y;
+                float length = (float) Math.sqrt(dx * dx + dy * dy);
+
+                if (length > 0) {
+                    dx /= length;
+                    dy /= length;
+                }
+
+                // Aimed bullets fly at twice the fighter's speed
+                float speed = fighter.speed * 2;
+                addEnemyBullet(boss.x, boss.y + boss.height / 2, dx * speed, dy * speed);
+            }
+        }
+    }
+
+    private void updateEnemyBullets(float deltaTime) {
+        stepDeltaTime = deltaTime;
+        enemyBulletStage.run(enemyBullets, moveEnemyBullets, null);
+    }
+
+    private void moveEnemyBullets(int from, int to, EntityStore spawns) {
+        EntityStore b = enemyBullets;
+        float deltaTime = stepDeltaTime;
+        for (int i = from; i < to; i++) {
+            b.x[i] += b.vx[i] * deltaTime;
+            b.y[i] += b.vy[i] * deltaTime;
+
+            float r = b.radius[i];
+            if (b.x[i] < -r || b.x[i] > WIDTH + r || b.y[i] < -r || b.y[i] > HEIGHT + r) {
+                b.flags[i] |= EntityStore.DEAD;
+            }
+        }
+    }
+
+    private void updateExplosions(float deltaTime) {
+        for (int i = 0; i < explosions.size(); i++) {
+            Explosion explosion = explosions.get(i);
+            explosion.update(deltaTime);
+
+            if (explosion.isFinished()) {
+                explosionPool.release(explosions.remove(i--));
+            }
+        }
+    }
+
+    // Every test is swept: it checks the whole way both things moved during the step, from
+    // their previous to their current position, so nothing passes through anything however
+    // long the step was (see Sweep)
+    void checkCollisions() {
+        float fighterX = fighter.x + fighter.width / 2;
+        float fighterY = fighter.y + fighter.height / 2;
+        float prevFighterX = fighter.prevX + fighter.width / 2;
+        float prevFighterY = fighter.prevY + fighter.height / 2;
+
+        // Check fighter collision with enemy bullets
+        EntityStore eb = enemyBullets;
+        for (int i = 0; i < eb.count && !config.invulnerable; i++) {
+            if (Sweep.circles(prevFighterX, prevFighterY, fighterX, fighterY,
+                    eb.prevX[i], eb.prevY[i], eb.x[i], eb.y[i], eb.radius[i])) {
+                gameOver();
+                return;
+            }
+        }
+
+        // Check fighter collision with enemies
+        EntityStore e = enemies;
+        float enemyCenterX = enemyWidth / 2, enemyCenterY = enemyHeight / 2;
+        for (int i = 0; i < e.count && !config.invulnerable; i++) {
+            if (Sweep.circles(prevFighterX, prevFighterY, fighterX, fighterY,
+                    e.prevX[i] + enemyCenterX, e.prevY[i] + enemyCenterY,
+                    e.x[i] + enemyCenterX, e.y[i] + enemyCenterY, 5)) {
+                gameOver();
+                return;
+            }
+        }
+
+        // Check fighter collision with boss
+        if (boss != null && !config.invulnerable) {
+            float bossCenterX = boss.width / 2, bossCenterY = boss.height / 2;
+            if (Sweep.circles(prevFighterX, prevFighterY, fighterX, fighterY,
+                    boss.prevX + bossCenterX, boss.prevY + bossCenterY,
+                    boss.x + bossCenterX, boss.y + bossCenterY, 5)) {
+                gameOver();
+                return;
+            }
+        }
+
+        // Check bullet collision with enemies. With many pairs only the enemies in the cells
+        // a bullet's path overlaps are tested. Destroyed bullets and enemies are flagged and
+        // removed after the pass.
+        EntityStore b = bullets;
+        boolean useGrid = (long) b.count * e.count >= BROAD_PHASE_MIN_PAIRS;
+        if (useGrid) {
+            enemyGrid.buildBoxes(e, enemyWidth, enemyHeight);
+        }
+        for (int i = 0; i < b.count; i++) {
+            float x = b.x[i], y = b.y[i], r = b.radius[i];
+            boolean hit = false;
+
+            int j = useGrid
+                    ? enemyGrid.firstHit(e, enemyWidth, enemyHeight, b, i)
+                    : SpatialGrid.scanForFirstHit(e, enemyWidth, enemyHeight, b, i);
+            if (j >= 0) {
+                // Enemy hit
+                sounds.play(SoundEffect.ENEMY_HIT);
+                explosions.add(explosionPool.obtain().init(e.x[j], e.y[j], enemyWidth, enemyHeight, false));
+                enemyDebris(e.x[j] + enemyWidth / 2, e.y[j] + enemyHeight / 2);
+                e.flags[j] |= EntityStore.DEAD;
+                b.flags[i] |= EntityStore.DEAD;
+                score += 10;
+                hit = true;
+            }
+
+            // Check bullet collision with boss
+            if (!hit && boss != null) {
+                if (Sweep.circleBox(b.prevX[i], b.prevY[i], x, y, r,
+                        boss.prevX, boss.prevY, boss.x, boss.y, boss.width, boss.height)) {
+
+                    // Boss hit
+                    boss.hit();
+                    b.flags[i] |= EntityStore.DEAD;
+
+                    if (boss.getHits() < 10) {
+                        sounds.play(SoundEffect.BOSS_HIT);
+                        particles.burst(x, y, r, 12, 60, 220, 0.3f, ParticleSystem.SPARK);
+                    } else {
+                        // Boss defeated
+                        bossDefeatSoundsLeft = 6;
+                        nextBossDefeatSoundTime = time;
+                        explosions.add(explosionPool.obtain().init(boss.x, boss.y, boss.width, boss.height, true));
+                        bossDebris(boss.x + boss.width / 2, boss.y + boss.height / 2, boss.width / 2);
+                        score += 100;
+                        boss = null;
+                        // The game is over and the enemies are gone; no more bullets hit anything
+                        gameOver();
+                        break;
+                    }
+                }
+            }
+
+        }
+        b.removeDead();
+        e.removeDead();
+    }
+
+    private void enemyDebris(float x, float y) {
+        particles.burst(x, y, 6, 40, 40, 180, 0.6f, ParticleSystem.FIRE);
+        particles.burst(x, y, 4, 16, 120, 260, 0.3f, ParticleSystem.SPARK);
+    }
+
+    // Thousands of pieces from all over the boss' body, flying out for a few seconds
+    private void bossDebris(float x, float y, float radius) {
+        particles.burst(x, y, radius, 1600, 20, 320, 2.0f, ParticleSystem.DEBRIS);
+        particles.burst(x, y, radius * 0.6f, 800, 60, 260, 1.2f, ParticleSystem.FIRE);
+        particles.burst(x, y, radius * 0.3f, 400, 200, 480, 0.8f, ParticleSystem.SPARK);
+        particles.burst(x, y, radius, 400, 10, 120, 2.5f, ParticleSystem.EMBER);
+    }
+
+    // Returns the explosions from the given index on to the pool
+    void releaseExplosions(int from) {
+        while (explosions.size() > from) {
+            explosionPool.release(explosions.remove(explosions.size() - 1));
+        }
+    }
+
+    // Hash of the whole simulation state, to check that a replay ended where the recording did
+    long stateHash() {
+        long h = seed;
+        h = mix(h, gameState.ordinal());
+        h = mix(h, score);
+        h = mix(h, time);
+        h = mix(h, Float.floatToIntBits(titleFighterX));
+        h = mix(h, Float.floatToIntBits(titleFighterY));
+        h = mix(h, Float.floatToIntBits(fighter.x));
+        h = mix(h, Float.floatToIntBits(fighter.y));
+        h = bullets.hash(h);
+        h = enemies.hash(h);
+        h = enemyBullets.hash(h);
+        if (boss != null) {
+            h = mix(h, Float.floatToIntBits(boss.x));
+            h = mix(h, Float.floatToIntBits(boss.y));
+            h = mix(h, boss.getHits());
+        }
+        return mix(h, explosions.size());
+    }
+
+    static long mix(long hash, long value) {
+        long h = (hash ^ value) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    private void gameOver() {
+        gameState = GameState.GAME_OVER;
+        gameOverTime = time;
+
+        // Clear all enemies and bullets
+        enemies.clear();
+        enemyBullets.clear();
+        boss = null;
+    }
+
+    private void updateGameOver(float deltaTime) {
+        // Update any remaining explosions and particles
+        updateExplosions(deltaTime);
+        particles.update(deltaTime);
+    }
+
+    // Game object classes
+
+    class Fighter {
+        float x, y;
+        float prevX, prevY;
+        int width, height;
+        float speed = 200;
+        private long lastShotTime;
+
+        Fighter() {
+            this.width = sizes.fighterWidth * 2;
+            this.height = sizes.fighterHeight * 2;
+        }
+
+        void init(float x, float y) {
+            this.x = x;
+            this.y = y;
+            this.prevX = x;
+            this.prevY = y;
+            this.lastShotTime = 0;
+        }
+
+        void move(int dx, int dy, float deltaTime) {
+            if (dx != 0 || dy != 0) {
+                float length = (float) Math.sqrt(dx * dx + dy * dy);
+                dx /= length;
+                dy /= length;
+
+                x += dx * speed * deltaTime;
+                y += dy * speed * deltaTime;
+            }
+        }
+
+        void shoot() {
+            // Limit shooting rate and max bullets
+            if (time - lastShotTime > config.shotIntervalMillis * NANOS_PER_MILLI && bullets.count < config.maxBullets) {
+                int i = bullets.add(x + width, y + height / 2);
+                if (i >= 0) {
+                    bullets.vx[i] = BULLET_SPEED;
+                    bullets.radius[i] = BULLET_RADIUS;
+                    lastShotTime = time;
+                    sounds.play(SoundEffect.SHOT);
+                }
+            }
+        }
+    }
+
+    class Boss {
+        float x, y;
+        float prevX, prevY;
+        private float targetY;
+        private float speed = 150;
+        int width, height;
+        private int hits;
+        private int state; // 0: normal, 1: moving left, 2: waiting, 3: moving right
+        private float stateTime;
+
+        Boss() {
+            this.width = sizes.bossWidth * 8;
+            this.height = sizes.bossHeight * 8;
+        }
+
+        Boss init(float x, float y) {
+            this.x = x;
+            this.y = y;
+            this.prevX = x;
+            this.prevY = y;
+            this.targetY = y;
+            this.hits = 0;
+            this.state = 0;
+            this.stateTime = 0;
+            return this;
+        }
+
+        void update(float deltaTime) {
+            stateTime += deltaTime;
+
+            switch (state) {
+                case 0: // Normal state - move up and down
+                    if (Math.abs(y - targetY) < 5) {
+                        targetY = random.nextInt(HEIGHT - height - 100) + 50;
+                    }
+
+                    float dy = targetY - y;
+                    y += Math.signum(dy) * Math.min(Math.abs(dy), speed * deltaTime);
+
+                    // Occasionally move left
+                    if (random.nextFloat() < 0.005) {
+                        state = 1;
+                        stateTime = 0;
+                    }
+
+                    // Move into screen at start
+                    if (x > WIDTH - width - 20) {
+                        x -= speed * deltaTime;
+                    }
+                    break;
+
+                case 1: // Moving left
+                    x -= speed * deltaTime;
+                    if (x <= 0) {
+                        state = 2;
+                        stateTime = 0;
+                    }
+                    break;
+
+                case 2: // Waiting at left
+                    if (stateTime >= 1.0f) {
+                        state = 3;
+                        stateTime = 0;
+                    }
+                    break;
+
+                case 3: // Moving right
+                    x += speed * deltaTime;
+                    if (x >= WIDTH - width - 20) {
+                        x = WIDTH - width - 20;
+                        state = 0;
+                        stateTime = 0;
+                    }
+                    break;
+            }
+        }
+
+        void hit() {
+            hits++;
+        }
+
+        int getHits() {
+            return hits;
+        }
+    }
+
+    class Explosion {
+        float x, y;
+        int width, height;
+        private float time;
+        private float duration = 0.8f;
+        private int currentFrame;
+        private float frameTime;
+        private boolean isBoss;
+
+        Explosion init(float x, float y, int width, int height, boolean isBoss) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.isBoss = isBoss;
+            this.time = 0;
+            this.currentFrame = 0;
+            this.frameTime = 0;
+            return this;
+        }
+
+        void update(float deltaTime) {
+            time += deltaTime;
+            frameTime += deltaTime;
+
+            if (frameTime >= 0.1f) {
+                currentFrame = (currentFrame + 1) % 2;
+                frameTime = 0;
+            }
+        }
+
+        boolean isFinished() {
+            return time >= duration;
+        }
+
+        int getCurrentFrame() {
+            return currentFrame;
+        }
+    }
+
+    // Free list of game objects that have left the game, ready to be reused
+    private static final class Pool<T> {
+        private final List<T> free = new ArrayList<>();
+        private final Supplier<T> factory;
+
+        Pool(Supplier<T> factory) {
+            this.factory = factory;
+        }
+
+        T obtain() {
+            int size = free.size();
+            return size == 0 ? factory.get() : free.remove(size - 1);
+        }
+
+        void release(T object) {
+            free.add(object);
+        }
+
+        void releaseAll(List<T> objects) {
+            for (int i = 0; i < objects.size(); i++) {
+                free.add(objects.get(i));
+            }
+            objects.clear();
+        }
+    }
+}
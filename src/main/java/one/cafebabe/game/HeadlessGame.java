@@ -0,0 +1,236 @@
+package one.cafebabe.game;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+// Runs the game simulation without a display or audio device, as fast as the CPU allows.
+// A simple autopilot plays the game so that long soak runs and balance sweeps exercise
+// the title, playing and game over states over and over.
+//
+// Usage: ShootingGame --headless [--seconds=3600] [--tick-rate=60] [--seed=N] [--record=FILE]
+//                                [--profile] [--serve=PORT] [--config=FILE] [--<setting>=V]
+//        ShootingGame --headless --replay=FILE
+//
+// --profile times the phases of every step and prints their p50/p99/max at the end.
+// --record saves the autopilot's input as an InputRecording, and --replay plays a recording
+// back (from this or the windowed game) as fast as possible and checks that it ends the same.
+// --serve plays in real time instead and streams every step to spectators (see SpectatorServer).
+// --config and the other GameConfig settings tune the game, as in the windowed game.
+public class HeadlessGame {
+    private final GameWorld world;
+    private final long stepNanos;
+    private InputRecording recording;
+    private SpectatorServer spectators;
+
+    // Statistics
+    private long ticks = 0;
+    private int gamesPlayed = 0;
+    private long totalScore = 0;
+    private int bestScore = 0;
+
+    public HeadlessGame(long stepNanos) throws IOException {
+        this(stepNanos, new GameWorld(SpriteSizes.fromResources(), SoundPlayer.SILENT));
+    }
+
+    public HeadlessGame(long stepNanos, long seed) throws IOException {
+        this(stepNanos, seed, GameConfig.DEFAULT);
+    }
+
+    HeadlessGame(long stepNanos, long seed, GameConfig config) throws IOException {
+        this(stepNanos, new GameWorld(SpriteSizes.fromResources(), SoundPlayer.SILENT, seed, config));
+    }
+
+    HeadlessGame(long stepNanos, GameWorld world) {
+        this.world = world;
+        this.stepNanos = stepNanos;
+    }
+
+    // Records the input of every following step
+    void startRecording() {
+        recording = new InputRecording(world.seed, stepNanos, world.config);
+    }
+
+    // Streams every following step to the server's spectators
+    void serve(SpectatorServer spectators) {
+        this.spectators = spectators;
+    }
+
+    // Advances the simulation by the given amount of simulated time
+    public void simulate(long simulatedNanos) {
+        simulateSteps((simulatedNanos + stepNanos - 1) / stepNanos);
+    }
+
+    void simulateSteps(long steps) {
+        for (long i = 0; i < steps; i++) {
+            step();
+        }
+    }
+
+    // Advances the simulation like simulate(), but no faster than real time
+    void play(long simulatedNanos) throws InterruptedException {
+        long steps = (simulatedNanos + stepNanos - 1) / stepNanos;
+        long start = System.nanoTime();
+        for (long i = 0; i < steps; i++) {
+            step();
+            long sleepNanos = start + (i + 1) * stepNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                Thread.sleep(sleepNanos / 1_000_000, (int) (sleepNanos % 1_000_000));
+            }
+        }
+    }
+
+    private void step() {
+        GameWorld.GameState before = world.gameState;
+        int input = autopilot();
+        if (recording != null) {
+            recording.record(input);
+        }
+        world.applyInput(input);
+        world.update(stepNanos);
+        ticks++;
+        if (spectators != null) {
+            spectators.publish(world);
+        }
+
+        if (before == GameWorld.GameState.PLAYING && world.gameState == GameWorld.GameState.GAME_OVER) {
+            gamesPlayed++;
+            totalScore += world.score;
+            bestScore = Math.max(bestScore, world.score);
+        }
+    }
+
+    long ticks() {
+        return ticks;
+    }
+
+    int gamesPlayed() {
+        return gamesPlayed;
+    }
+
+    long totalScore() {
+        return totalScore;
+    }
+
+    int bestScore() {
+        return bestScore;
+    }
+
+    private int autopilot() {
+        // Keep firing; space also starts and restarts the game
+        int input = Input.FIRE;
+
+        // Line up with the closest enemy, or the boss
+        float fighterY = world.fighter.y + world.fighter.height / 2f;
+        float targetY = fighterY;
+        float closest = Float.MAX_VALUE;
+        EntityStore enemies = world.enemies;
+        for (int i = 0; i < enemies.count; i++) {
+            if (enemies.x[i] < closest) {
+                closest = enemies.x[i];
+                targetY = enemies.y[i] + world.enemyHeight / 2f;
+            }
+        }
+        if (world.boss != null && enemies.count == 0) {
+            targetY = world.boss.y + world.boss.height / 2f;
+        }
+
+        if (targetY < fighterY - 4) {
+            input |= Input.UP;
+        } else if (targetY > fighterY + 4) {
+            input |= Input.DOWN;
+        }
+        return input;
+    }
+
+    // Replays a recording into a new world and reports whether it ended like the original
+    static boolean replay(Path path) throws IOException {
+        InputRecording recording = InputRecording.load(path);
+        GameWorld world = new GameWorld(SpriteSizes.fromResources(), SoundPlayer.SILENT, recording.seed,
+                recording.config);
+
+        long start = System.nanoTime();
+        recording.replay(world);
+        double wallSeconds = (System.nanoTime() - start) / 1e9;
+
+        boolean matches = world.score == recording.finalScore() && world.stateHash() == recording.finalStateHash();
+        System.out.printf("Replayed %d steps in %.2f s (%.0f steps/s), seed %d%n",
+                recording.steps(), wallSeconds, recording.steps() / wallSeconds, recording.seed);
+        System.out.printf("Score %d, state hash %016x: %s%n", world.score, world.stateHash(),
+                matches ? "matches the recording" : String.format("DIFFERS from the recording (score %d, state hash %016x)",
+                        recording.finalScore(), recording.finalStateHash()));
+        return matches;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+
+        long seconds = 3600;
+        int tickRate = GameWorld.TICKS_PER_SECOND;
+        Long seed = null;
+        Path record = null;
+        Integer serve = null;
+        boolean profile = false;
+        for (String arg : args) {
+            if (arg.startsWith("--seconds=")) {
+                seconds = Long.parseLong(arg.substring("--seconds=".length()));
+            } else if (arg.startsWith("--tick-rate=")) {
+                tickRate = FixedStepLoop.parseTickRate(arg.substring("--tick-rate=".length()));
+            } else if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(arg.substring("--seed=".length()));
+            } else if (arg.startsWith("--record=")) {
+                record = Paths.get(arg.substring("--record=".length()));
+            } else if (arg.startsWith("--replay=")) {
+                if (!replay(Paths.get(arg.substring("--replay=".length())))) {
+                    System.exit(1);
+                }
+                return;
+            } else if (arg.startsWith("--serve=")) {
+                serve = Integer.parseInt(arg.substring("--serve=".length()));
+            } else if (arg.equals("--profile")) {
+                profile = true;
+            }
+        }
+
+        long stepNanos = 1_000_000_000L / tickRate;
+        HeadlessGame game = new HeadlessGame(stepNanos, seed == null ? new Random().nextLong() : seed,
+                GameConfig.fromArgs(args));
+        FrameProfiler profiler = game.world.profiler;
+        if (profile) {
+            profiler.setWindow(Long.MAX_VALUE);
+            profiler.setEnabled(true);
+        }
+
+        if (record != null) {
+            game.startRecording();
+        }
+
+        long start = System.nanoTime();
+        if (serve != null) {
+            try (SpectatorServer server = new SpectatorServer(serve, game.world.config)) {
+                System.out.println("Serving spectators on port " + server.port());
+                game.serve(server);
+                game.play(seconds * 1_000_000_000L);
+            }
+        } else {
+            game.simulate(seconds * 1_000_000_000L);
+        }
+        double wallSeconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("Simulated %d s in %.2f s (%.0fx real time), %d ticks, %.0f ticks/s%n",
+                seconds, wallSeconds, seconds / wallSeconds, game.ticks, game.ticks / wallSeconds);
+        System.out.printf("Games played: %d, best score: %d, average score: %.1f%n",
+                game.gamesPlayed, game.bestScore,
+                game.gamesPlayed == 0 ? 0.0 : (double) game.totalScore / game.gamesPlayed);
+        if (profile) {
+            profiler.summarize();
+            System.out.print(profiler.report());
+        }
+        if (record != null) {
+            game.recording.finish(game.world);
+            game.recording.save(record);
+            System.out.printf("Recorded %d steps with seed %d to %s%n", game.recording.steps(), game.world.seed, record);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package one.cafebabe.game;
+
+import java.awt.event.KeyEvent;
+
+// The player's input for one simulation step, as bits of an int: the arrow keys that are
+// held, and FIRE when space was pressed since the previous step. Input is applied to the
+// world only at the start of a step, so a step's outcome depends on nothing but the
+// world's state and this one value. PROFILE is a press of F3, which the game loop takes out
+// before the input reaches the world.
+final class Input {
+    static final int UP = 1;
+    static final int DOWN = 2;
+    static final int LEFT = 4;
+    static final int RIGHT = 8;
+    static final int FIRE = 16;
+    static final int PROFILE = 32;
+    // Buttons reported once per press instead of while held
+    static final int PRESSES = FIRE | PROFILE;
+
+    private Input() {
+    }
+
+    // The button bit of a key, or 0 for keys the game does not use
+    static int button(int keyCode) {
+        switch (keyCode) {
+            case KeyEvent.VK_UP:
+                return UP;
+            case KeyEvent.VK_DOWN:
+                return DOWN;
+            case KeyEvent.VK_LEFT:
+                return LEFT;
+            case KeyEvent.VK_RIGHT:
+                return RIGHT;
+            case KeyEvent.VK_SPACE:
+                return FIRE;
+            case KeyEvent.VK_F3:
+                return PROFILE;
+            default:
+                return 0;
+        }
+    }
+}
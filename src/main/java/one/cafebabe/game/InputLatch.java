@@ -0,0 +1,113 @@
+package one.cafebabe.game;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Key events from the Swing event thread, queued with the time they arrived in a lock-free
+// single-producer/single-consumer ring and replayed by the game thread at the start of each
+// step. A key that was pressed and released between two steps still counts as held for one
+// step, and FIRE and PROFILE are reported once per press. Replaying an event records how long it waited
+// for its step, the input-to-simulation latency.
+//
+// The event thread only writes the slots between head and tail + CAPACITY and then moves
+// head; the game thread only reads the slots between tail and head and then moves tail.
+// If the game thread stalls long enough for the ring to fill, further presses are OR-ed into
+// a fallback mask and the held keys are taken from the event thread's own view once the
+// ring is drained, so a stall never loses a shot or leaves a key stuck.
+final class InputLatch {
+    private static final int CAPACITY = 256;
+    private static final int MASK = CAPACITY - 1;
+    private static final int RELEASED = 1 << 31;
+
+    private final long[] times = new long[CAPACITY];
+    private final int[] events = new int[CAPACITY];
+    // Events written, moved by the event thread
+    private final AtomicLong head = new AtomicLong();
+    // Events replayed, moved by the game thread
+    private final AtomicLong tail = new AtomicLong();
+
+    // Event thread: the keys it has seen held, and presses that did not fit into the ring
+    private volatile int producerHeld;
+    private final AtomicInteger overflowPressed = new AtomicInteger();
+    private volatile boolean overflowed;
+
+    // Game thread
+    private int held;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private long overflows;
+
+    void keyPressed(int keyCode, long nanos) {
+        int button = Input.button(keyCode);
+        if (button != 0) {
+            if ((button & Input.PRESSES) == 0) {
+                producerHeld |= button;
+            }
+            offer(button, nanos);
+        }
+    }
+
+    void keyReleased(int keyCode, long nanos) {
+        int button = Input.button(keyCode);
+        if (button != 0) {
+            producerHeld &= ~button;
+            offer(button | RELEASED, nanos);
+        }
+    }
+
+    private void offer(int event, long nanos) {
+        long h = head.get();
+        if (h - tail.get() == CAPACITY) {
+            if ((event & RELEASED) == 0) {
+                overflowPressed.accumulateAndGet(event, (bits, b) -> bits | b);
+            }
+            overflowed = true;
+            return;
+        }
+        int slot = (int) h & MASK;
+        times[slot] = nanos;
+        events[slot] = event;
+        // Publishes the slot before the game thread can see the new head
+        head.lazySet(h + 1);
+    }
+
+    // Replays the events queued since the previous step and returns the input for the next
+    // one; now is the time the step starts, on the clock the events were stamped with
+    int sample(long now) {
+        int pressed = 0;
+        long t = tail.get();
+        long h = head.get();
+        for (; t < h; t++) {
+            int slot = (int) t & MASK;
+            int event = events[slot];
+            latency.record(now - times[slot]);
+            if ((event & RELEASED) != 0) {
+                held &= ~(event & ~RELEASED);
+            } else {
+                pressed |= event;
+                if ((event & Input.PRESSES) == 0) {
+                    held |= event;
+                }
+            }
+        }
+        // Frees the slots for the event thread
+        tail.lazySet(t);
+
+        if (overflowed) {
+            overflowed = false;
+            overflows++;
+            pressed |= overflowPressed.getAndSet(0);
+            held = producerHeld;
+        }
+        return held | pressed;
+    }
+
+    // Time from key event to the step that applied it; call on the game thread
+    String summary() {
+        String text = String.format("Input: %d events, to step p50 %.1f ms, p99 %.1f ms, max %.1f ms",
+                latency.count(), latency.percentile(50) / 1e6, latency.percentile(99) / 1e6, latency.max() / 1e6);
+        if (overflows > 0) {
+            text += String.format(", ring overflowed %d times", overflows);
+        }
+        return text;
+    }
+}
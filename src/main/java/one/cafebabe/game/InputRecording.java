@@ -0,0 +1,165 @@
+package one.cafebabe.game;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.TreeSet;
+
+// The input of every step of a game session, with the seed, step size and GameConfig it was
+// played with, and the score and state hash it ended with. Replaying the same input into a
+// world created with the same seed and configuration reproduces the session exactly, so the
+// final state must match.
+//
+// The input is stored as runs of identical steps. The file is a DataOutputStream of:
+// magic, version, seed, step nanos, the number of config settings and each setting's name
+// and value, steps, run count, then per run the input byte and the run length as a varint,
+// and finally the score and state hash.
+final class InputRecording {
+    private static final int MAGIC = 0x4A465250; // "JFRP"
+    // Version 2: enemies decide to fire from per-entity random numbers instead of the shared Random
+    // Version 3: the game configuration
+    // Version 4: enemies and the boss come from the stage script
+    private static final int VERSION = 4;
+
+    final long seed;
+    final long stepNanos;
+    final GameConfig config;
+    private long steps;
+    private int runCount;
+    private byte[] runInputs = new byte[64];
+    private int[] runLengths = new int[64];
+    private int finalScore;
+    private long finalStateHash;
+
+    InputRecording(long seed, long stepNanos, GameConfig config) {
+        this.seed = seed;
+        this.stepNanos = stepNanos;
+        this.config = config;
+    }
+
+    long steps() {
+        return steps;
+    }
+
+    int finalScore() {
+        return finalScore;
+    }
+
+    long finalStateHash() {
+        return finalStateHash;
+    }
+
+    // Appends the input of the next step
+    void record(int input) {
+        if (runCount > 0 && runInputs[runCount - 1] == (byte) input) {
+            runLengths[runCount - 1]++;
+        } else {
+            if (runCount == runInputs.length) {
+                runInputs = Arrays.copyOf(runInputs, Math.max(16, runCount * 2));
+                runLengths = Arrays.copyOf(runLengths, Math.max(16, runCount * 2));
+            }
+            runInputs[runCount] = (byte) input;
+            runLengths[runCount] = 1;
+            runCount++;
+        }
+        steps++;
+    }
+
+    // Remembers how the recorded session ended
+    void finish(GameWorld world) {
+        finalScore = world.score;
+        finalStateHash = world.stateHash();
+    }
+
+    // Steps the world through the recorded input, which must start from the recording's seed
+    // and configuration
+    void replay(GameWorld world) {
+        for (int run = 0; run < runCount; run++) {
+            int input = runInputs[run];
+            for (int i = runLengths[run]; i > 0; i--) {
+                world.applyInput(input);
+                world.update(stepNanos);
+            }
+        }
+    }
+
+    void save(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(seed);
+            out.writeLong(stepNanos);
+            Properties settings = config.toProperties();
+            out.writeInt(settings.size());
+            for (String name : new TreeSet<>(settings.stringPropertyNames())) {
+                out.writeUTF(name);
+                out.writeUTF(settings.getProperty(name));
+            }
+            out.writeLong(steps);
+            out.writeInt(runCount);
+            for (int run = 0; run < runCount; run++) {
+                out.writeByte(runInputs[run]);
+                writeVarInt(out, runLengths[run]);
+            }
+            out.writeInt(finalScore);
+            out.writeLong(finalStateHash);
+        }
+    }
+
+    static InputRecording load(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(path + " is not an input recording");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException(path + " has unsupported version " + version);
+            }
+            long seed = in.readLong();
+            long stepNanos = in.readLong();
+            Properties settings = new Properties();
+            for (int i = in.readInt(); i > 0; i--) {
+                settings.setProperty(in.readUTF(), in.readUTF());
+            }
+            InputRecording recording = new InputRecording(seed, stepNanos, new GameConfig(settings));
+            recording.steps = in.readLong();
+            int runs = in.readInt();
+            recording.runCount = runs;
+            recording.runInputs = new byte[runs];
+            recording.runLengths = new int[runs];
+            for (int run = 0; run < runs; run++) {
+                recording.runInputs[run] = in.readByte();
+                recording.runLengths[run] = readVarInt(in);
+            }
+            recording.finalScore = in.readInt();
+            recording.finalStateHash = in.readLong();
+            return recording;
+        }
+    }
+
+    // Seven bits per byte, low bits first, high bit set on all but the last byte
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+}
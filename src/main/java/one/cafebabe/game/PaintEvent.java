@@ -0,0 +1,30 @@
+package one.cafebabe.game;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// JFR event for drawing one frame
+@Name("one.cafebabe.game.Paint")
+@Label("Paint")
+@Category("Junie Fighter")
+@Description("Drawing one frame of the game")
+final class PaintEvent extends Event {
+    private static final EventType TYPE = EventType.getEventType(PaintEvent.class);
+
+    @Label("Entities")
+    int entities;
+
+    // A started event when a recording wants paint events, otherwise null without allocating
+    static PaintEvent beginIfRecording() {
+        if (!TYPE.isEnabled()) {
+            return null;
+        }
+        PaintEvent event = new PaintEvent();
+        event.begin();
+        return event;
+    }
+}
@@ -0,0 +1,107 @@
+package one.cafebabe.game;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Runs the per-entity update of an EntityStore on the common ForkJoinPool once the store is
+// large enough to pay for it, and on the calling thread below that. The store is cut into
+// contiguous chunks. A chunk update may only write the slots of its own entities: it flags
+// removed entities DEAD, and adds spawned entities to the spawn buffer of its chunk. Once
+// every chunk is done, the spawn buffers are appended to their target in chunk order and
+// the dead entities are removed, which gives the same result as a serial pass over the
+// store no matter how the chunks were scheduled.
+//
+// Tasks and spawn buffers are allocated once and reused, so after its first pass a parallel
+// pass allocates nothing either. A spawn buffer holds as many entities as the spawn target,
+// so a chunk can never spawn more than a serial pass could add.
+final class ParallelStage {
+    static final int DEFAULT_THRESHOLD = 8192;
+    private static final int MIN_CHUNK_SIZE = 2048;
+
+    interface ChunkUpdate {
+        // Updates entities [from, to), adding any spawned entities to spawns
+        void update(int from, int to, EntityStore spawns);
+    }
+
+    // Stores with fewer entities are updated serially; Integer.MAX_VALUE turns parallel updates off
+    private final int threshold;
+    private final int maxChunks;
+    private final ForkJoinPool pool = ForkJoinPool.commonPool();
+    private final int spawnCapacity;
+    private final Chunk[] chunks;
+    private final RecursiveAction root;
+    private int chunkCount;
+    private ChunkUpdate update;
+
+    ParallelStage(int threshold, int spawnCapacity) {
+        this.threshold = threshold;
+        this.spawnCapacity = spawnCapacity;
+        this.maxChunks = Math.max(1, pool.getParallelism() * 4);
+        chunks = new Chunk[maxChunks];
+        for (int c = 0; c < maxChunks; c++) {
+            chunks[c] = new Chunk();
+        }
+        root = new RecursiveAction() {
+            @Override
+            protected void compute() {
+                // Fork all chunks but the first, run that one here and wait for the rest
+                for (int c = chunkCount - 1; c > 0; c--) {
+                    chunks[c].fork();
+                }
+                chunks[0].compute();
+                for (int c = 1; c < chunkCount; c++) {
+                    chunks[c].join();
+                }
+            }
+        };
+    }
+
+    // Updates every entity of the store, then appends the spawns to spawnTarget (if any)
+    // and removes the entities flagged DEAD
+    void run(EntityStore store, ChunkUpdate update, EntityStore spawnTarget) {
+        int count = store.count;
+        if (count < threshold || maxChunks == 1) {
+            chunkCount = 1;
+            chunks[0].prepare(0, count);
+            update.update(0, count, chunks[0].spawns);
+        } else {
+            chunkCount = Math.min(maxChunks, Math.max(2, count / MIN_CHUNK_SIZE));
+            for (int c = 0; c < chunkCount; c++) {
+                chunks[c].prepare((int) ((long) count * c / chunkCount), (int) ((long) count * (c + 1) / chunkCount));
+            }
+            this.update = update;
+            root.reinitialize();
+            pool.invoke(root);
+            this.update = null;
+        }
+
+        if (spawnTarget != null) {
+            for (int c = 0; c < chunkCount; c++) {
+                spawnTarget.addAll(chunks[c].spawns);
+            }
+        }
+        store.removeDead();
+    }
+
+    // Never serialized, though ForkJoinTask is Serializable
+    @SuppressWarnings("serial")
+    private final class Chunk extends RecursiveAction {
+        EntityStore spawns;
+        private int from, to;
+
+        void prepare(int from, int to) {
+            this.from = from;
+            this.to = to;
+            if (spawns == null) {
+                spawns = new EntityStore(spawnCapacity);
+            }
+            spawns.clear();
+            reinitialize();
+        }
+
+        @Override
+        protected void compute() {
+            update.update(from, to, spawns);
+        }
+    }
+}
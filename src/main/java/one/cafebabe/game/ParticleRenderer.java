@@ -0,0 +1,103 @@
+package one.cafebabe.game;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+// Draws all particles of a frame with one drawImage: each particle is a small square written
+// straight into the int pixels of an offscreen layer, and only the rectangle they cover is
+// copied onto the frame. Thousands of particles cost a few array writes each instead of a
+// Java2D call each. The layer is cleared by clearing that rectangle again on the next frame.
+// The software renderer blends the layer into its Framebuffer instead.
+final class ParticleRenderer {
+    private static final int WIDTH = GameWorld.WIDTH;
+    private static final int HEIGHT = GameWorld.HEIGHT;
+    private static final int FADE_LEVELS = 16;
+    private static final float STEP_SECONDS = GameWorld.STEP_NANOS / 1e9f;
+
+    private final BufferedImage layer = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+    private final int[] pixels = ((DataBufferInt) layer.getRaster().getDataBuffer()).getData();
+    // Each palette colour at each fade level, as ARGB
+    private final int[] shades = new int[ParticleSystem.PALETTE.length * FADE_LEVELS];
+
+    // The rectangle drawn last time, empty when maxX < minX
+    private int minX, minY, maxX = -1, maxY = -1;
+
+    ParticleRenderer() {
+        for (int c = 0; c < ParticleSystem.PALETTE.length; c++) {
+            int rgb = ParticleSystem.PALETTE[c] & 0xFFFFFF;
+            for (int level = 0; level < FADE_LEVELS; level++) {
+                int alpha = 255 * (level + 1) / FADE_LEVELS;
+                shades[c * FADE_LEVELS + level] = alpha << 24 | rgb;
+            }
+        }
+    }
+
+    // alpha is the render interpolation factor: particles are drawn where they were that far
+    // into the step, going back along their velocity from where they are now. Of more than max
+    // particles only every so many are drawn.
+    void draw(Graphics2D g2d, ParticleSystem particles, float alpha, int max) {
+        if (fill(particles, alpha, max)) {
+            g2d.drawImage(layer, minX, minY, maxX + 1, maxY + 1, minX, minY, maxX + 1, maxY + 1, null);
+        }
+    }
+
+    void draw(Framebuffer framebuffer, ParticleSystem particles, float alpha, int max) {
+        if (fill(particles, alpha, max)) {
+            framebuffer.blend(pixels, minX, minY, maxX, maxY);
+        }
+    }
+
+    // Draws the particles into the layer, and returns whether any of them are on screen
+    private boolean fill(ParticleSystem particles, float alpha, int max) {
+        clear();
+        int n = particles.count;
+        if (n == 0 || max <= 0) {
+            return false;
+        }
+        int stride = n > max ? (n + max - 1) / max : 1;
+
+        float back = (1 - alpha) * STEP_SECONDS;
+        int[] pixels = this.pixels;
+        int minX = WIDTH, minY = HEIGHT, maxX = -1, maxY = -1;
+        for (int i = 0; i < n; i += stride) {
+            int c = particles.color[i];
+            int size = ParticleSystem.SIZES[c];
+            int x0 = (int) (particles.x[i] - particles.vx[i] * back) - size / 2;
+            int y0 = (int) (particles.y[i] - particles.vy[i] * back) - size / 2;
+            int x1 = Math.min(WIDTH, x0 + size);
+            int y1 = Math.min(HEIGHT, y0 + size);
+            x0 = Math.max(0, x0);
+            y0 = Math.max(0, y0);
+            if (x0 >= x1 || y0 >= y1) {
+                continue;
+            }
+            int level = Math.min(FADE_LEVELS - 1, (int) (particles.fade(i) * FADE_LEVELS));
+            int shade = shades[c * FADE_LEVELS + level];
+            for (int y = y0; y < y1; y++) {
+                int row = y * WIDTH;
+                for (int x = x0; x < x1; x++) {
+                    pixels[row + x] = shade;
+                }
+            }
+            minX = Math.min(minX, x0);
+            minY = Math.min(minY, y0);
+            maxX = Math.max(maxX, x1 - 1);
+            maxY = Math.max(maxY, y1 - 1);
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        return maxX >= minX;
+    }
+
+    private void clear() {
+        for (int y = minY; y <= maxY; y++) {
+            int row = y * WIDTH;
+            Arrays.fill(pixels, row + minX, row + maxX + 1, 0);
+        }
+        maxX = maxY = -1;
+    }
+}
@@ -0,0 +1,133 @@
+package one.cafebabe.game;
+
+// Picks how much detail the renderer draws from how long recent paints took, so the game
+// keeps its frame rate on slow machines without hand tuning. Paint times are collected over
+// windows of WINDOW_FRAMES frames; when the 90th percentile of a window exceeds the share of
+// the 60 FPS frame budget that painting may take, quality drops one level at once. It only
+// goes back up after several windows in a row well under the budget, and every time a step
+// up has to be taken back soon after, it waits twice as long before trying again.
+//
+// Called only on the thread that paints. A controller with a fixed level never changes it.
+final class QualityController {
+    // Each level also keeps the savings of the ones above it
+    enum Level {
+        HIGH(true, false, GameWorld.MAX_PARTICLES, true),
+        NO_ANTIALIASING(false, false, GameWorld.MAX_PARTICLES, true),
+        BULLET_SPRITES(false, true, GameWorld.MAX_PARTICLES, true),
+        FEWER_PARTICLES(false, true, GameWorld.MAX_PARTICLES / 4, true),
+        LOW(false, true, GameWorld.MAX_PARTICLES / 16, false);
+
+        // Antialiased shapes and text
+        final boolean antialiasing;
+        // Bullets drawn from pre-rendered images instead of filled ovals
+        final boolean bulletSprites;
+        // At most this many particles are drawn, evenly thinned out
+        final int maxParticles;
+        // Explosion sprites; without them only their particles are drawn
+        final boolean explosionSprites;
+
+        Level(boolean antialiasing, boolean bulletSprites, int maxParticles, boolean explosionSprites) {
+            this.antialiasing = antialiasing;
+            this.bulletSprites = bulletSprites;
+            this.maxParticles = maxParticles;
+            this.explosionSprites = explosionSprites;
+        }
+    }
+
+    private static final Level[] LEVELS = Level.values();
+    private static final int WINDOW_FRAMES = 30;
+    // Painting shares the frame with the simulation and the window system
+    private static final long SLOW_NANOS = GameWorld.STEP_NANOS / 2;
+    private static final long FAST_NANOS = GameWorld.STEP_NANOS / 5;
+    private static final int MIN_FAST_WINDOWS = 4;
+    private static final int MAX_FAST_WINDOWS = 64;
+
+    private final boolean adaptive;
+    private final boolean verbose;
+    private Level level;
+
+    private final LatencyHistogram paints = new LatencyHistogram();
+    private int fastWindows;
+    private int fastWindowsNeeded = MIN_FAST_WINDOWS;
+    // Windows since the last step up, to notice one that did not hold
+    private int windowsSinceUp = Integer.MAX_VALUE;
+
+    private QualityController(Level level, boolean adaptive, boolean verbose) {
+        this.level = level;
+        this.adaptive = adaptive;
+        this.verbose = verbose;
+    }
+
+    // Starts at the highest level and adapts; verbose prints every change
+    static QualityController adaptive(boolean verbose) {
+        return new QualityController(Level.HIGH, true, verbose);
+    }
+
+    static QualityController fixed(Level level) {
+        return new QualityController(level, false, false);
+    }
+
+    // --quality=auto (the default) or one of the level names, e.g. --quality=no_antialiasing
+    static QualityController fromArgs(String[] args, boolean verbose) {
+        for (String arg : args) {
+            if (arg.startsWith("--quality=")) {
+                String name = arg.substring("--quality=".length());
+                if (name.equals("auto")) {
+                    break;
+                }
+                try {
+                    return fixed(Level.valueOf(name.toUpperCase()));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Unknown quality level: " + name);
+                }
+            }
+        }
+        return adaptive(verbose);
+    }
+
+    Level level() {
+        return level;
+    }
+
+    // Called after every paint with how long it took
+    void painted(long nanos) {
+        if (!adaptive) {
+            return;
+        }
+        paints.record(nanos);
+        if (paints.count() < WINDOW_FRAMES) {
+            return;
+        }
+        long p90 = paints.percentile(90);
+        paints.reset();
+        if (windowsSinceUp < Integer.MAX_VALUE) {
+            windowsSinceUp++;
+        }
+
+        if (p90 > SLOW_NANOS) {
+            fastWindows = 0;
+            if (level.ordinal() < LEVELS.length - 1) {
+                if (windowsSinceUp <= 2) {
+                    // The level above was too much after all; be slower to try it again
+                    fastWindowsNeeded = Math.min(MAX_FAST_WINDOWS, fastWindowsNeeded * 2);
+                }
+                change(LEVELS[level.ordinal() + 1], p90);
+            }
+        } else if (p90 < FAST_NANOS) {
+            if (++fastWindows >= fastWindowsNeeded && level.ordinal() > 0) {
+                fastWindows = 0;
+                windowsSinceUp = 0;
+                change(LEVELS[level.ordinal() - 1], p90);
+            }
+        } else {
+            fastWindows = 0;
+        }
+    }
+
+    private void change(Level next, long p90) {
+        if (verbose) {
+            System.out.printf("Quality: %s -> %s (paint p90 %.1f ms)%n", level, next, p90 / 1e6);
+        }
+        level = next;
+    }
+}
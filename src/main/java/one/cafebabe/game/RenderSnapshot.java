@@ -0,0 +1,132 @@
+package one.cafebabe.game;
+
+// Everything the renderer needs to draw one frame, copied out of the GameWorld by the game
+// thread. Snapshots are preallocated and handed to the renderer through a TripleBuffer, so
+// the renderer never reads state that the game thread is changing.
+final class RenderSnapshot {
+    static final int MAX_EXPLOSIONS = 256;
+
+    GameWorld.GameState gameState = GameWorld.GameState.TITLE;
+    int score;
+    boolean canRestart;
+    // Render interpolation factor between the previous and the current step
+    float alpha;
+
+    // Set by the game loop: the number of this frame, the steps so far that had no frame of
+    // their own, and when the oldest key press first shown by this frame happened (0 if none)
+    long sequence;
+    long missedSteps;
+    long inputNanos;
+
+    // Profiler overlay: shown while the world's profiler is enabled, with its last summary
+    boolean profiling;
+    int profileSummaries;
+    final long[] profileP50 = new long[FrameProfiler.Phase.COUNT];
+    final long[] profileP99 = new long[FrameProfiler.Phase.COUNT];
+    final long[] profileMax = new long[FrameProfiler.Phase.COUNT];
+
+    // Title screen
+    float titleFighterX, titleFighterY;
+    float prevTitleFighterX, prevTitleFighterY;
+    boolean titleTransitioning;
+
+    // Fighter
+    float fighterX, fighterY;
+    float prevFighterX, prevFighterY;
+    int fighterWidth, fighterHeight;
+
+    // Bullets and enemies
+    final EntityStore bullets;
+    final EntityStore enemies;
+    final EntityStore enemyBullets;
+    int enemyWidth, enemyHeight;
+
+    // Boss
+    boolean bossVisible;
+    int bossHits;
+    float bossX, bossY;
+    float prevBossX, prevBossY;
+    int bossWidth, bossHeight;
+
+    // Explosions
+    int explosionCount;
+    final float[] explosionX = new float[MAX_EXPLOSIONS];
+    final float[] explosionY = new float[MAX_EXPLOSIONS];
+    final int[] explosionWidth = new int[MAX_EXPLOSIONS];
+    final int[] explosionHeight = new int[MAX_EXPLOSIONS];
+    final int[] explosionFrame = new int[MAX_EXPLOSIONS];
+
+    // Particles
+    final ParticleSystem particles = new ParticleSystem(GameWorld.MAX_PARTICLES);
+
+    RenderSnapshot() {
+        this(GameWorld.MAX_BULLETS, GameWorld.MAX_ENEMIES, GameWorld.MAX_ENEMY_BULLETS);
+    }
+
+    // Must be at least as large as the stores of the world it captures
+    RenderSnapshot(int maxBullets, int maxEnemies, int maxEnemyBullets) {
+        bullets = new EntityStore(maxBullets);
+        enemies = new EntityStore(maxEnemies);
+        enemyBullets = new EntityStore(maxEnemyBullets);
+    }
+
+    void capture(GameWorld world, float alpha) {
+        gameState = world.gameState;
+        score = world.score;
+        canRestart = world.canRestart();
+        this.alpha = alpha;
+
+        FrameProfiler profiler = world.profiler;
+        profiling = profiler.isEnabled();
+        if (profiling) {
+            profileSummaries = profiler.summaries;
+            System.arraycopy(profiler.p50, 0, profileP50, 0, FrameProfiler.Phase.COUNT);
+            System.arraycopy(profiler.p99, 0, profileP99, 0, FrameProfiler.Phase.COUNT);
+            System.arraycopy(profiler.max, 0, profileMax, 0, FrameProfiler.Phase.COUNT);
+        }
+
+        titleFighterX = world.titleFighterX;
+        titleFighterY = world.titleFighterY;
+        prevTitleFighterX = world.prevTitleFighterX;
+        prevTitleFighterY = world.prevTitleFighterY;
+        titleTransitioning = world.titleTransitioning;
+
+        GameWorld.Fighter fighter = world.fighter;
+        fighterX = fighter.x;
+        fighterY = fighter.y;
+        prevFighterX = fighter.prevX;
+        prevFighterY = fighter.prevY;
+        fighterWidth = fighter.width;
+        fighterHeight = fighter.height;
+
+        bullets.copyFrom(world.bullets);
+        enemies.copyFrom(world.enemies);
+        enemyBullets.copyFrom(world.enemyBullets);
+        enemyWidth = world.enemyWidth;
+        enemyHeight = world.enemyHeight;
+
+        GameWorld.Boss boss = world.boss;
+        bossVisible = boss != null;
+        if (boss != null) {
+            bossX = boss.x;
+            bossY = boss.y;
+            prevBossX = boss.prevX;
+            prevBossY = boss.prevY;
+            bossWidth = boss.width;
+            bossHeight = boss.height;
+            bossHits = boss.getHits();
+        }
+
+        explosionCount = Math.min(world.explosions.size(), MAX_EXPLOSIONS);
+        for (int i = 0; i < explosionCount; i++) {
+            GameWorld.Explosion explosion = world.explosions.get(i);
+            explosionX[i] = explosion.x;
+            explosionY[i] = explosion.y;
+            explosionWidth[i] = explosion.width;
+            explosionHeight[i] = explosion.height;
+            explosionFrame[i] = explosion.getCurrentFrame();
+        }
+
+        particles.copyFrom(world.particles);
+    }
+}
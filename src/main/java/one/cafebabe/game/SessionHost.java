@@ -0,0 +1,145 @@
+package one.cafebabe.game;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Runs many independent headless sessions in one JVM on a fixed number of threads, for
+// example to evaluate the autopilot over thousands of seeds without starting a JVM per match.
+// Every session is a HeadlessGame with its own GameWorld, so it has its own Random, seeded
+// with the base seed plus its number, and its own simulation time; sessions share only
+// immutable objects (the sprite sizes and the GameConfig). A session is created when a thread
+// picks it up and dropped when it is done, so only as many worlds exist as there are threads.
+//
+// Usage: ShootingGame --sessions=1000 [--threads=N] [--seconds=600] [--seed=N] [--config=FILE]
+//                     [--<setting>=V]
+final class SessionHost {
+    private static final long REPORT_INTERVAL_SECONDS = 10;
+    // Sessions add their ticks to the total after every simulated second
+    private static final long SLICE_STEPS = GameWorld.TICKS_PER_SECOND;
+
+    private final SpriteSizes sizes;
+    private final GameConfig config;
+    private final long baseSeed;
+    private final long simulatedNanos;
+
+    // Results per session, each written only by the thread that ran the session
+    private final long[] ticks;
+    private final int[] gamesPlayed;
+    private final long[] totalScores;
+    private final int[] bestScores;
+
+    private final LongAdder totalTicks = new LongAdder();
+    private final AtomicInteger finished = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    SessionHost(int sessions, GameConfig config, long baseSeed, long simulatedNanos) throws IOException {
+        this.sizes = SpriteSizes.fromResources();
+        this.config = config;
+        this.baseSeed = baseSeed;
+        this.simulatedNanos = simulatedNanos;
+        ticks = new long[sessions];
+        gamesPlayed = new int[sessions];
+        totalScores = new long[sessions];
+        bestScores = new int[sessions];
+    }
+
+    // Runs every session to the end and prints the progress and the results
+    void run(int threads) throws InterruptedException {
+        int sessions = ticks.length;
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "Session host " + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < sessions; i++) {
+            int session = i;
+            pool.execute(() -> runSession(session));
+        }
+        pool.shutdown();
+
+        long start = System.nanoTime();
+        long lastTicks = 0;
+        long lastTime = start;
+        while (!pool.awaitTermination(REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS)) {
+            long now = System.nanoTime();
+            long ticksNow = totalTicks.sum();
+            System.out.printf("%d/%d sessions done, %.0f ticks/s%n",
+                    finished.get(), sessions, (ticksNow - lastTicks) / ((now - lastTime) / 1e9));
+            lastTicks = ticksNow;
+            lastTime = now;
+        }
+        double wallSeconds = (System.nanoTime() - start) / 1e9;
+
+        // The pool has terminated, so every session's results are visible here
+        long allTicks = 0, allScores = 0;
+        int allGames = 0, best = 0;
+        for (int i = 0; i < sessions; i++) {
+            allTicks += ticks[i];
+            allGames += gamesPlayed[i];
+            allScores += totalScores[i];
+            best = Math.max(best, bestScores[i]);
+        }
+        System.out.printf("Ran %d sessions of %d s on %d threads in %.2f s: %d ticks, %.0f ticks/s%n",
+                sessions, simulatedNanos / 1_000_000_000L, threads, wallSeconds, allTicks, allTicks / wallSeconds);
+        System.out.printf("Games played: %d, best score: %d, average score: %.1f%n",
+                allGames, best, allGames == 0 ? 0.0 : (double) allScores / allGames);
+        if (failed.get() > 0) {
+            System.out.printf("%d sessions failed%n", failed.get());
+        }
+    }
+
+    private void runSession(int session) {
+        try {
+            GameWorld world = new GameWorld(sizes, SoundPlayer.SILENT, baseSeed + session, config);
+            HeadlessGame game = new HeadlessGame(GameWorld.STEP_NANOS, world);
+            // As many steps as HeadlessGame.simulate() would take
+            long steps = (simulatedNanos + GameWorld.STEP_NANOS - 1) / GameWorld.STEP_NANOS;
+            for (long done = 0; done < steps; done += SLICE_STEPS) {
+                long slice = Math.min(SLICE_STEPS, steps - done);
+                game.simulateSteps(slice);
+                totalTicks.add(slice);
+            }
+            ticks[session] = game.ticks();
+            gamesPlayed[session] = game.gamesPlayed();
+            totalScores[session] = game.totalScore();
+            bestScores[session] = game.bestScore();
+        } catch (RuntimeException e) {
+            if (failed.getAndIncrement() == 0) {
+                System.err.println("Session " + session + " failed:");
+                e.printStackTrace();
+            }
+        } finally {
+            finished.incrementAndGet();
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+
+        int sessions = 1000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seconds = 600;
+        long seed = new Random().nextLong();
+        for (String arg : args) {
+            if (arg.startsWith("--sessions=")) {
+                sessions = Integer.parseInt(arg.substring("--sessions=".length()));
+            } else if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(arg.substring("--threads=".length()));
+            } else if (arg.startsWith("--seconds=")) {
+                seconds = Long.parseLong(arg.substring("--seconds=".length()));
+            } else if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(arg.substring("--seed=".length()));
+            }
+        }
+
+        System.out.printf("Running %d sessions with seeds %d to %d on %d threads%n",
+                sessions, seed, seed + sessions - 1, threads);
+        new SessionHost(sessions, GameConfig.fromArgs(args), seed, seconds * 1_000_000_000L).run(threads);
+    }
+}
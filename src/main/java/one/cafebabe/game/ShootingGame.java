@@ -1,142 +1,142 @@
 package one.cafebabe.game;
 
-import javax.imageio.ImageIO;
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.Clip;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
-import java.awt.image.BufferedImage;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.image.BufferStrategy;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ShootingGame extends JPanel implements Runnable {
     // Constants
-    private static final int WINDOW_WIDTH = 600;
-    private static final int WINDOW_HEIGHT = 600;
-    private static final int FPS = 60;
-    private static final long FRAME_TIME = 1000 / FPS;
-
-    // Game states
-    private enum GameState {
-        TITLE, PLAYING, GAME_OVER
-    }
+    private static final int WINDOW_WIDTH = GameWorld.WIDTH;
+    private static final int WINDOW_HEIGHT = GameWorld.HEIGHT;
 
     // Game variables
-    private GameState gameState = GameState.TITLE;
     private Thread gameThread;
-    private boolean running = false;
-    private int score = 0;
-    private long gameStartTime = 0;
-    private long gameOverTime = 0;
-    private Random random = new Random();
-
-    // Input handling
-    private boolean[] keys = new boolean[256];
-
-    // Game objects
-    private Fighter fighter;
-    private List<Bullet> bullets = new ArrayList<>();
-    private List<Enemy> enemies = new ArrayList<>();
-    private List<EnemyBullet> enemyBullets = new ArrayList<>();
-    private Boss boss;
-    private List<Explosion> explosions = new ArrayList<>();
-
-    // Resources
-    private BufferedImage fighterImage;
-    private BufferedImage enemyImage;
-    private BufferedImage bossImage;
-    private BufferedImage explosionImage1;
-    private BufferedImage explosionImage2;
-
-    // Title screen variables
-    private float titleFighterX = WINDOW_WIDTH / 2.0f;
-    private float titleFighterY = WINDOW_HEIGHT / 2.0f + 50;
-    private float titleFighterVelocityX = 0;
-    private boolean titleTransitioning = false;
-    private long titleTransitionStartTime = 0;
+    // Cleared by stop() on the event thread
+    private volatile boolean running = false;
+    private final GameWorld world;
+    private final GameClock clock;
+    private final SoundPlayer sounds;
+    private long stepNanos = GameWorld.STEP_NANOS;
+
+    // Key events are queued here and applied at the start of each step, and optionally
+    // recorded for a headless replay
+    private final InputLatch input = new InputLatch();
+    private InputRecording recording;
+    private long lastInputReport;
+
+    // Streams every step to spectators, when serving
+    private SpectatorServer spectators;
+
+    // Frames published by the game thread, and the one the current paint draws
+    private final TripleBuffer<RenderSnapshot> snapshots;
+    private RenderSnapshot frame;
+    private long publishedFrames = 0;
+    private long missedSteps = 0;
+
+    // Active rendering: the game thread draws into the canvas' buffer strategy itself
+    // instead of asking Swing to repaint the panel
+    private final Canvas canvas;
+    private BufferStrategy strategy;
+
+    // Presented and dropped frames, and the time of the oldest key press not yet published
+    private final FrameStats stats;
+    private final AtomicLong pendingInputTime = new AtomicLong();
+
+    // Resources, some of which may still be loading
+    private final Assets assets;
+    private final GameRenderer renderer;
 
     public ShootingGame() {
+        this(GameClock.SYSTEM, new Random().nextLong(), GameConfig.DEFAULT, false, false, loadAssets(null));
+    }
+
+    ShootingGame(GameClock clock, long seed, GameConfig config, boolean activeRendering, boolean reportFrameStats,
+                 Assets assets) {
+        this.clock = clock;
+        this.assets = assets;
+        snapshots = new TripleBuffer<>(() -> new RenderSnapshot(
+                config.bulletCapacity, config.enemyCapacity, config.enemyBulletCapacity));
+        stats = new FrameStats(reportFrameStats);
         setPreferredSize(new Dimension(WINDOW_WIDTH, WINDOW_HEIGHT));
         setBackground(Color.BLACK);
         setFocusable(true);
 
         // Set up key listener
-        addKeyListener(new KeyAdapter() {
+        KeyAdapter keyListener = new KeyAdapter() {
             @Override
             public void keyPressed(KeyEvent e) {
-                keys[e.getKeyCode()] = true;
-                handleKeyPress(e.getKeyCode());
+                long now = clock.nanoTime();
+                pendingInputTime.compareAndSet(0, now);
+                input.keyPressed(e.getKeyCode(), now);
             }
 
             @Override
             public void keyReleased(KeyEvent e) {
-                keys[e.getKeyCode()] = false;
+                input.keyReleased(e.getKeyCode(), clock.nanoTime());
             }
-        });
+        };
+
+        if (activeRendering) {
+            // The canvas covers the whole panel and takes the keyboard focus
+            canvas = new Canvas();
+            canvas.setPreferredSize(new Dimension(WINDOW_WIDTH, WINDOW_HEIGHT));
+            canvas.setBackground(Color.BLACK);
+            canvas.setIgnoreRepaint(true);
+            canvas.addKeyListener(keyListener);
+            setLayout(new BorderLayout());
+            add(canvas);
+            setIgnoreRepaint(true);
+        } else {
+            canvas = null;
+            addKeyListener(keyListener);
+        }
 
-        // Load resources
-        loadResources();
+        // The title screen needs the sprites; the sounds are played once they have loaded
+        renderer = new GameRenderer(new SpriteCache(assets));
+        awaitAsset(assets.atlas);
+        sounds = ClipSoundPlayer.open(assets);
 
         // Initialize game objects
-        fighter = new Fighter(WINDOW_WIDTH / 4, WINDOW_HEIGHT / 2);
+        world = new GameWorld(assets.sizes, sounds, seed, config);
+        publishSnapshot(0);
     }
 
-    private void loadResources() {
+    // Starts loading the assets from the given bundle file, or from the bundle on the classpath
+    static Assets loadAssets(Path bundle) {
         try {
-            fighterImage = ImageIO.read(getClass().getResourceAsStream("/fighter.png"));
-            enemyImage = ImageIO.read(getClass().getResourceAsStream("/enemy.png"));
-            bossImage = ImageIO.read(getClass().getResourceAsStream("/boss.png"));
-            explosionImage1 = ImageIO.read(getClass().getResourceAsStream("/explosion1.png"));
-            explosionImage2 = ImageIO.read(getClass().getResourceAsStream("/explosion2.png"));
-        } catch (IOException e) {
+            Assets assets = Assets.load(bundle == null ? AssetBundle.shared() : AssetBundle.open(bundle));
+            assets.all.thenRun(() -> System.out.printf("Loaded the assets from %s in %.0f ms%n",
+                    assets.bundle.source, (System.nanoTime() - assets.startNanos) / 1e6));
+            return assets;
+        } catch (IOException | UncheckedIOException e) {
             e.printStackTrace();
             System.exit(1);
+            return null;
         }
     }
 
-    private void handleKeyPress(int keyCode) {
-        if (keyCode == KeyEvent.VK_SPACE) {
-            switch (gameState) {
-                case TITLE:
-                    if (!titleTransitioning) {
-                        playSound("/jingle_original_interval_003.wav");
-                        titleTransitioning = true;
-                        titleTransitionStartTime = System.currentTimeMillis();
-                    }
-                    break;
-                case PLAYING:
-                    fighter.shoot();
-                    break;
-                case GAME_OVER:
-                    if (System.currentTimeMillis() - gameOverTime > 3000) {
-                        resetGame();
-                    }
-                    break;
-            }
+    // Waits for an asset the game cannot do without, and exits if it failed to load
+    private static void awaitAsset(CompletableFuture<?> asset) {
+        try {
+            Assets.await(asset);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            e.printStackTrace();
+            System.exit(1);
         }
     }
 
-    private void resetGame() {
-        gameState = GameState.TITLE;
-        score = 0;
-        titleFighterX = WINDOW_WIDTH / 2.0f;
-        titleFighterY = WINDOW_HEIGHT / 2.0f + 50;
-        titleFighterVelocityX = 0;
-        titleTransitioning = false;
-        fighter = new Fighter(WINDOW_WIDTH / 4, WINDOW_HEIGHT / 2);
-        bullets.clear();
-        enemies.clear();
-        enemyBullets.clear();
-        boss = null;
-        explosions.clear();
-    }
-
     public void start() {
         if (gameThread == null || !running) {
             running = true;
@@ -145,6 +145,39 @@ public class ShootingGame extends JPanel implements Runnable {
         }
     }
 
+    // Simulation steps per second; call before start() and startRecording()
+    void setTickRate(int ticksPerSecond) {
+        stepNanos = 1_000_000_000L / ticksPerSecond;
+    }
+
+    // Decides how much detail the renderer draws; call before start()
+    void setQuality(QualityController quality) {
+        renderer.setQuality(quality);
+    }
+
+    // Draws frames into an int[] framebuffer instead of with Java2D; call before start()
+    void setSoftwareRendering(boolean software) {
+        renderer.setSoftware(software);
+    }
+
+    // Records the input of every step from now on; call before start()
+    void startRecording() {
+        recording = new InputRecording(world.seed, stepNanos, world.config);
+    }
+
+    // Streams the game to spectators on the given port; call before start()
+    void serve(int port) throws IOException {
+        spectators = new SpectatorServer(port, world.config);
+        System.out.println("Serving spectators on port " + spectators.port());
+    }
+
+    // Saves the recording with the final state of the world; call after stop()
+    void saveRecording(Path path) throws IOException {
+        recording.finish(world);
+        recording.save(path);
+        System.out.printf("Recorded %d steps with seed %d to %s%n", recording.steps(), world.seed, path);
+    }
+
     public void stop() {
         running = false;
         try {
@@ -152,25 +185,38 @@ public class ShootingGame extends JPanel implements Runnable {
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
+        if (strategy != null) {
+            strategy.dispose();
+        }
+        sounds.close();
+        if (spectators != null) {
+            try {
+                spectators.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
     }
 
     @Override
     public void run() {
-        long lastTime = System.currentTimeMillis();
+        FixedStepLoop loop = new FixedStepLoop(clock, stepNanos, this::step);
 
         while (running) {
-            long currentTime = System.currentTimeMillis();
-            long elapsedTime = currentTime - lastTime;
-
-            update(elapsedTime);
-            repaint();
-
-            lastTime = currentTime;
+            float alpha = loop.advance();
+            // Every step beyond the first one was a frame that could not be shown
+            missedSteps += Math.max(0, loop.lastStepCount() - 1);
+            publishSnapshot(alpha);
+            if (canvas != null) {
+                renderActive();
+            } else {
+                repaint();
+            }
 
             try {
-                long sleepTime = FRAME_TIME - (System.currentTimeMillis() - currentTime);
+                long sleepTime = loop.nanosUntilNextStep();
                 if (sleepTime > 0) {
-                    Thread.sleep(sleepTime);
+                    Thread.sleep(sleepTime / 1_000_000, (int) (sleepTime % 1_000_000));
                 }
             } catch (InterruptedException e) {
                 e.printStackTrace();
@@ -178,452 +224,212 @@ public class ShootingGame extends JPanel implements Runnable {
         }
     }
 
-    private void update(long elapsedTime) {
-        float deltaTime = elapsedTime / 1000.0f;
-
-        switch (gameState) {
-            case TITLE:
-                updateTitle(deltaTime);
-                break;
-            case PLAYING:
-                updatePlaying(deltaTime);
-                break;
-            case GAME_OVER:
-                updateGameOver(deltaTime);
-                break;
+    // One simulation step, with the input collected since the previous one
+    private void step(long stepNanos) {
+        long now = clock.nanoTime();
+        int buttons = input.sample(now);
+        if ((buttons & Input.PROFILE) != 0) {
+            // Debug overlay with per-phase frame times
+            world.profiler.setEnabled(!world.profiler.isEnabled());
+            buttons &= ~Input.PROFILE;
         }
-    }
-
-    private void updateTitle(float deltaTime) {
-        if (titleTransitioning) {
-            titleFighterVelocityX += 200 * deltaTime;
-            titleFighterX += titleFighterVelocityX * deltaTime;
-
-            if (titleFighterX > WINDOW_WIDTH + 50) {
-                gameState = GameState.PLAYING;
-                gameStartTime = System.currentTimeMillis();
-                fighter = new Fighter(WINDOW_WIDTH / 4, WINDOW_HEIGHT / 2);
+        if (stats.isReporting() && now - lastInputReport >= FrameStats.REPORT_INTERVAL_NANOS) {
+            if (lastInputReport != 0) {
+                System.out.println(input.summary());
             }
-        } else {
-            // Make the fighter float up and down slightly
-            titleFighterY += Math.sin(System.currentTimeMillis() / 500.0) * 0.5;
+            lastInputReport = now;
         }
-    }
-
-    private void updatePlaying(float deltaTime) {
-        long gameTime = System.currentTimeMillis() - gameStartTime;
-
-        // Update fighter
-        updateFighter(deltaTime);
-
-        // Update bullets
-        updateBullets(deltaTime);
-
-        // Update enemies
-        updateEnemies(deltaTime, gameTime);
-
-        // Update boss
-        updateBoss(deltaTime, gameTime);
-
-        // Update enemy bullets
-        updateEnemyBullets(deltaTime);
-
-        // Update explosions
-        updateExplosions(deltaTime);
-
-        // Check collisions
-        checkCollisions();
-    }
-
-    private void updateFighter(float deltaTime) {
-        // Movement
-        int dx = 0, dy = 0;
-
-        if (keys[KeyEvent.VK_UP]) dy -= 1;
-        if (keys[KeyEvent.VK_DOWN]) dy += 1;
-        if (keys[KeyEvent.VK_LEFT]) dx -= 1;
-        if (keys[KeyEvent.VK_RIGHT]) dx += 1;
-
-        fighter.move(dx, dy, deltaTime);
-
-        // Keep fighter within bounds
-        fighter.x = Math.max(0, Math.min(WINDOW_WIDTH - fighter.width, fighter.x));
-        fighter.y = Math.max(0, Math.min(WINDOW_HEIGHT - fighter.height, fighter.y));
-    }
-
-    private void updateBullets(float deltaTime) {
-        Iterator<Bullet> it = bullets.iterator();
-        while (it.hasNext()) {
-            Bullet bullet = it.next();
-            bullet.update(deltaTime);
-
-            if (bullet.x > WINDOW_WIDTH) {
-                it.remove();
-            }
-        }
-    }
-
-    private void updateEnemies(float deltaTime, long gameTime) {
-        // Spawn enemies
-        if (gameTime < 10000 && enemies.size() < 5 && random.nextFloat() < 0.02) {
-            int maxEnemies = (int) Math.min(5, 1 + gameTime / 2000);
-            if (enemies.size() < maxEnemies) {
-                enemies.add(new Enemy(WINDOW_WIDTH + 20, random.nextInt(WINDOW_HEIGHT - 40) + 20));
-            }
-        }
-
-        // Update existing enemies
-        Iterator<Enemy> it = enemies.iterator();
-        while (it.hasNext()) {
-            Enemy enemy = it.next();
-            enemy.update(deltaTime);
-
-            // Remove enemies that have left the screen
-            if (enemy.x < -enemy.width) {
-                it.remove();
-                continue;
-            }
-
-            // Enemy shooting (after 5 seconds)
-            if (gameTime > 5000 && random.nextFloat() < 0.005) {
-                enemyBullets.add(new EnemyBullet(enemy.x, enemy.y + enemy.height / 2));
-            }
-        }
-    }
-
-    private void updateBoss(float deltaTime, long gameTime) {
-        // Spawn boss after 10 seconds
-        if (gameTime > 10000 && boss == null && enemies.isEmpty()) {
-            boss = new Boss(WINDOW_WIDTH + 50, WINDOW_HEIGHT / 2);
-        }
-
-        if (boss != null) {
-            boss.update(deltaTime);
-
-            // Boss shooting
-            if (random.nextFloat() < 0.05 && enemyBullets.size() < 5) {
-                float targetX = fighter.x + random.nextInt(100) - 50;
-                float targetY = fighter.y + random.nextInt(100) - 50;
-
-                float dx = targetX - boss.x;
-                float dy = targetY - boss.y;
-                float length = (float) Math.sqrt(dx * dx + dy * dy);
-
-                if (length > 0) {
-                    dx /= length;
-                    dy /= length;
-                }
-
-                enemyBullets.add(new EnemyBullet(boss.x, boss.y + boss.height / 2, dx, dy));
-            }
+        if (recording != null) {
+            recording.record(buttons);
         }
-    }
-
-    private void updateEnemyBullets(float deltaTime) {
-        Iterator<EnemyBullet> it = enemyBullets.iterator();
-        while (it.hasNext()) {
-            EnemyBullet bullet = it.next();
-            bullet.update(deltaTime);
-
-            if (bullet.x < -bullet.radius || bullet.x > WINDOW_WIDTH + bullet.radius ||
-                bullet.y < -bullet.radius || bullet.y > WINDOW_HEIGHT + bullet.radius) {
-                it.remove();
-            }
+        world.applyInput(buttons);
+        world.update(stepNanos);
+        if (spectators != null) {
+            spectators.publish(world);
         }
     }
 
-    private void updateExplosions(float deltaTime) {
-        Iterator<Explosion> it = explosions.iterator();
-        while (it.hasNext()) {
-            Explosion explosion = it.next();
-            explosion.update(deltaTime);
-
-            if (explosion.isFinished()) {
-                it.remove();
-            }
-        }
+    // Hands a copy of the current world state to the renderer
+    private void publishSnapshot(float alpha) {
+        long t = world.profiler.start();
+        RenderSnapshot snapshot = snapshots.back();
+        snapshot.capture(world, alpha);
+        snapshot.sequence = ++publishedFrames;
+        snapshot.missedSteps = missedSteps;
+        snapshot.inputNanos = pendingInputTime.getAndSet(0);
+        snapshots.publish();
+        world.profiler.end(FrameProfiler.Phase.SNAPSHOT, t);
     }
 
-    private void checkCollisions() {
-        // Check fighter collision with enemy bullets
-        for (EnemyBullet bullet : enemyBullets) {
-            if (distance(fighter.x + fighter.width / 2, fighter.y + fighter.height / 2,
-                    bullet.x, bullet.y) < bullet.radius) {
-                gameOver();
-                return;
-            }
-        }
-
-        // Check fighter collision with enemies
-        for (Enemy enemy : enemies) {
-            if (distance(fighter.x + fighter.width / 2, fighter.y + fighter.height / 2,
-                    enemy.x + enemy.width / 2, enemy.y + enemy.height / 2) < 5) {
-                gameOver();
+    // Draws the latest frame into the back buffer and presents it. Both loops retry when the
+    // buffer's video memory was lost while drawing, as the BufferStrategy documentation asks.
+    private void renderActive() {
+        if (strategy == null) {
+            if (!canvas.isDisplayable()) {
                 return;
             }
-        }
-
-        // Check fighter collision with boss
-        if (boss != null) {
-            if (distance(fighter.x + fighter.width / 2, fighter.y + fighter.height / 2,
-                    boss.x + boss.width / 2, boss.y + boss.height / 2) < 5) {
-                gameOver();
-                return;
-            }
-        }
-
-        // Check bullet collision with enemies
-        Iterator<Bullet> bulletIt = bullets.iterator();
-        while (bulletIt.hasNext()) {
-            Bullet bullet = bulletIt.next();
-
-            Iterator<Enemy> enemyIt = enemies.iterator();
-            boolean hit = false;
-
-            while (enemyIt.hasNext() && !hit) {
-                Enemy enemy = enemyIt.next();
-
-                if (bullet.x + bullet.radius > enemy.x &&
-                    bullet.x - bullet.radius < enemy.x + enemy.width &&
-                    bullet.y + bullet.radius > enemy.y &&
-                    bullet.y - bullet.radius < enemy.y + enemy.height) {
-
-                    // Enemy hit
-                    playSound("/se_hit_007.wav");
-                    explosions.add(new Explosion(enemy.x, enemy.y, enemy.width, enemy.height, false));
-                    enemyIt.remove();
-                    bulletIt.remove();
-                    score += 10;
-                    hit = true;
-                }
-            }
-
-            // Check bullet collision with boss
-            if (!hit && boss != null) {
-                if (bullet.x + bullet.radius > boss.x &&
-                    bullet.x - bullet.radius < boss.x + boss.width &&
-                    bullet.y + bullet.radius > boss.y &&
-                    bullet.y - bullet.radius < boss.y + boss.height) {
-
-                    // Boss hit
-                    boss.hit();
-                    bulletIt.remove();
-
-                    if (boss.getHits() < 10) {
-                        playSound("/se_shot_003.wav");
-                    } else {
-                        // Boss defeated
-                        playBossDefeatSound();
-                        explosions.add(new Explosion(boss.x, boss.y, boss.width, boss.height, true));
-                        score += 100;
-                        boss = null;
-                        gameOver();
-                    }
+            strategy = createBufferStrategy(canvas);
+        }
+
+        do {
+            do {
+                Graphics2D g2d = (Graphics2D) strategy.getDrawGraphics();
+                try {
+                    g2d.setColor(Color.BLACK);
+                    g2d.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+                    render(g2d);
+                } finally {
+                    g2d.dispose();
                 }
-            }
-
-        }
-    }
-
-    private void gameOver() {
-        gameState = GameState.GAME_OVER;
-        gameOverTime = System.currentTimeMillis();
+            } while (strategy.contentsRestored());
+            strategy.show();
+        } while (strategy.contentsLost());
 
-        // Clear all enemies and bullets
-        enemies.clear();
-        enemyBullets.clear();
-        boss = null;
+        // Push the frame out to the display now instead of letting the window system batch it
+        Toolkit.getDefaultToolkit().sync();
+        stats.presented(frame, clock.nanoTime());
     }
 
-    private void updateGameOver(float deltaTime) {
-        // Update any remaining explosions
-        updateExplosions(deltaTime);
+    // Page flipping where the pipeline supports it, which presents on the vertical retrace,
+    // and otherwise whatever Java2D picks, usually blitting from an accelerated back buffer
+    private static BufferStrategy createBufferStrategy(Canvas canvas) {
+        BufferCapabilities flipping = new BufferCapabilities(
+                new ImageCapabilities(true), new ImageCapabilities(true), BufferCapabilities.FlipContents.UNDEFINED);
+        try {
+            canvas.createBufferStrategy(2, flipping);
+        } catch (AWTException e) {
+            canvas.createBufferStrategy(2);
+        }
+        BufferStrategy strategy = canvas.getBufferStrategy();
+        System.out.println("Active rendering: " +
+                (strategy.getCapabilities().isPageFlipping() ? "page flipping" : "blitting"));
+        return strategy;
     }
 
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
-        Graphics2D g2d = (Graphics2D) g;
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-
-        switch (gameState) {
-            case TITLE:
-                drawTitle(g2d);
-                break;
-            case PLAYING:
-                drawGame(g2d);
-                break;
-            case GAME_OVER:
-                drawGameOver(g2d);
-                break;
-        }
-    }
-
-    private void drawTitle(Graphics2D g2d) {
-        // Draw title
-        g2d.setColor(Color.WHITE);
-        g2d.setFont(new Font("Arial", Font.BOLD, 36));
-        FontMetrics fm = g2d.getFontMetrics();
-        String title = "The Junie Fighter";
-        int titleWidth = fm.stringWidth(title);
-        g2d.drawString(title, (WINDOW_WIDTH - titleWidth) / 2, 100);
-
-        // Draw fighter
-        g2d.drawImage(fighterImage,
-                (int) titleFighterX - fighterImage.getWidth(),
-                (int) titleFighterY - fighterImage.getHeight() / 2,
-                fighterImage.getWidth() * 2,
-                fighterImage.getHeight() * 2,
-                null);
-
-        // Draw instructions
-        if (!titleTransitioning) {
-            g2d.setFont(new Font("Arial", Font.PLAIN, 18));
-            String instructions = "Press SPACE to start";
-            int instructionsWidth = g2d.getFontMetrics().stringWidth(instructions);
-            g2d.drawString(instructions, (WINDOW_WIDTH - instructionsWidth) / 2, WINDOW_HEIGHT - 100);
+        if (canvas == null) {
+            render((Graphics2D) g);
+            stats.presented(frame, clock.nanoTime());
         }
     }
 
-    private void drawGame(Graphics2D g2d) {
-        // Draw score
-        g2d.setColor(Color.WHITE);
-        g2d.setFont(new Font("Arial", Font.BOLD, 18));
-        g2d.drawString("Score: " + score, 20, 30);
-
-        // Draw fighter
-        g2d.drawImage(fighterImage,
-                (int) fighter.x,
-                (int) fighter.y,
-                fighter.width,
-                fighter.height,
-                null);
-
-        // Draw bullets
-        g2d.setColor(Color.WHITE);
-        for (Bullet bullet : bullets) {
-            g2d.fillOval((int) (bullet.x - bullet.radius),
-                    (int) (bullet.y - bullet.radius),
-                    (int) (bullet.radius * 2),
-                    (int) (bullet.radius * 2));
-        }
-
-        // Draw enemies
-        for (Enemy enemy : enemies) {
-            g2d.drawImage(enemyImage,
-                    (int) enemy.x,
-                    (int) enemy.y,
-                    enemy.width,
-                    enemy.height,
-                    null);
-        }
-
-        // Draw boss
-        if (boss != null) {
-            g2d.drawImage(bossImage,
-                    (int) boss.x,
-                    (int) boss.y,
-                    boss.width,
-                    boss.height,
-                    null);
-        }
-
-        // Draw enemy bullets
-        g2d.setColor(Color.RED);
-        for (EnemyBullet bullet : enemyBullets) {
-            g2d.fillOval((int) (bullet.x - bullet.radius),
-                    (int) (bullet.y - bullet.radius),
-                    (int) (bullet.radius * 2),
-                    (int) (bullet.radius * 2));
-        }
-
-        // Draw explosions
-        for (Explosion explosion : explosions) {
-            BufferedImage img = explosion.getCurrentFrame() == 0 ? explosionImage1 : explosionImage2;
-            g2d.drawImage(img,
-                    (int) explosion.x,
-                    (int) explosion.y,
-                    explosion.width,
-                    explosion.height,
-                    null);
-        }
+    private void render(Graphics2D g2d) {
+        frame = snapshots.acquire();
+        renderer.render(g2d, frame);
     }
 
-    private void drawGameOver(Graphics2D g2d) {
-        // Draw remaining explosions
-        for (Explosion explosion : explosions) {
-            BufferedImage img = explosion.getCurrentFrame() == 0 ? explosionImage1 : explosionImage2;
-            g2d.drawImage(img,
-                    (int) explosion.x,
-                    (int) explosion.y,
-                    explosion.width,
-                    explosion.height,
-                    null);
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (Arrays.asList(args).contains("--headless")) {
+            HeadlessGame.main(args);
+            return;
         }
-
-        // Draw game over text
-        g2d.setColor(Color.WHITE);
-        g2d.setFont(new Font("Arial", Font.BOLD, 48));
-        FontMetrics fm = g2d.getFontMetrics();
-        String gameOverText = "GAME OVER";
-        int textWidth = fm.stringWidth(gameOverText);
-        g2d.drawString(gameOverText, (WINDOW_WIDTH - textWidth) / 2, WINDOW_HEIGHT / 2 - 50);
-
-        // Draw score
-        g2d.setFont(new Font("Arial", Font.BOLD, 36));
-        fm = g2d.getFontMetrics();
-        String scoreText = "Score: " + score;
-        textWidth = fm.stringWidth(scoreText);
-        g2d.drawString(scoreText, (WINDOW_WIDTH - textWidth) / 2, WINDOW_HEIGHT / 2 + 20);
-
-        // Draw restart instructions (after 3 seconds)
-        if (System.currentTimeMillis() - gameOverTime > 3000) {
-            g2d.setFont(new Font("Arial", Font.PLAIN, 24));
-            String restartText = "Press SPACE to restart";
-            textWidth = fm.stringWidth(restartText);
-            g2d.drawString(restartText, (WINDOW_WIDTH - textWidth) / 2, WINDOW_HEIGHT / 2 + 80);
+        if (Arrays.stream(args).anyMatch(arg -> arg.startsWith("--sessions="))) {
+            SessionHost.main(args);
+            return;
         }
-    }
-
-    private float distance(float x1, float y1, float x2, float y2) {
-        float dx = x2 - x1;
-        float dy = y2 - y1;
-        return (float) Math.sqrt(dx * dx + dy * dy);
-    }
-
-    private void playSound(String soundFile) {
-        try {
-            AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(
-                    getClass().getResource(soundFile));
-            Clip clip = AudioSystem.getClip();
-            clip.open(audioInputStream);
-            clip.start();
-        } catch (Exception e) {
-            e.printStackTrace();
+        for (String arg : args) {
+            if (arg.startsWith("--watch=")) {
+                SpectatorClient.watch(arg.substring("--watch=".length()));
+                return;
+            }
         }
-    }
 
-    private void playBossDefeatSound() {
-        new Thread(() -> {
-            try {
-                for (int i = 0; i < 3; i++) {
-                    playSound("/se_hit_010.wav");
-                    Thread.sleep(200);
-                    playSound("/se_hit_012.wav");
-                    Thread.sleep(200);
-                }
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+        // --time-scale=2.0 runs the game at twice the normal speed, --active-rendering draws
+        // from the game loop instead of through Swing, --frame-stats reports frame pacing,
+        // --profile starts with the frame time overlay on (F3 toggles it), --seed=N fixes the
+        // random seed, and --record=FILE saves the session's input for --headless --replay=FILE.
+        // --tick-rate=N simulates N steps per second instead of 60; collisions are swept, so at a
+        // low rate nothing passes through anything. --config=FILE and --<setting>=value change
+        // the GameConfig, e.g. --load=10. --serve=PORT streams the game to spectators, who watch
+        // it with --watch=HOST:PORT. --assets=FILE loads the images and sounds from an asset
+        // bundle file instead of the one in the jar. --quality=LEVEL fixes the level of detail
+        // (high, no_antialiasing, bullet_sprites, fewer_particles or low); by default it drops
+        // when painting takes too much of the frame and comes back when there is time again.
+        // --software-rendering draws the frame into an int[] framebuffer instead of with Java2D.
+        GameConfig config = GameConfig.fromArgs(args);
+        GameClock clock = GameClock.SYSTEM;
+        long randomSeed = new Random().nextLong();
+        Path recordPath = null;
+        Path assetsPath = null;
+        Integer servePort = null;
+        int ticksPerSecond = GameWorld.TICKS_PER_SECOND;
+        boolean activeRendering = false;
+        boolean frameStats = false;
+        boolean profile = false;
+        boolean softwareRendering = false;
+        for (String arg : args) {
+            if (arg.startsWith("--time-scale=")) {
+                clock = GameClock.scaled(clock, Double.parseDouble(arg.substring("--time-scale=".length())));
+            } else if (arg.equals("--active-rendering")) {
+                activeRendering = true;
+            } else if (arg.equals("--frame-stats")) {
+                frameStats = true;
+            } else if (arg.equals("--profile")) {
+                profile = true;
+            } else if (arg.equals("--software-rendering")) {
+                softwareRendering = true;
+            } else if (arg.startsWith("--seed=")) {
+                randomSeed = Long.parseLong(arg.substring("--seed=".length()));
+            } else if (arg.startsWith("--record=")) {
+                recordPath = Paths.get(arg.substring("--record=".length()));
+            } else if (arg.startsWith("--assets=")) {
+                assetsPath = Paths.get(arg.substring("--assets=".length()));
+            } else if (arg.startsWith("--serve=")) {
+                servePort = Integer.parseInt(arg.substring("--serve=".length()));
+            } else if (arg.startsWith("--tick-rate=")) {
+                ticksPerSecond = FixedStepLoop.parseTickRate(arg.substring("--tick-rate=".length()));
             }
-        }).start();
-    }
+        }
+        GameClock gameClock = clock;
+        boolean active = activeRendering;
+        boolean report = frameStats || activeRendering;
+        boolean profiling = profile;
+        long seed = randomSeed;
+        Path record = recordPath;
+        // Load while the window system starts up
+        Assets assets = loadAssets(assetsPath);
+        Integer port = servePort;
+        int tickRate = ticksPerSecond;
+        QualityController quality = QualityController.fromArgs(args, report);
+        boolean software = softwareRendering;
 
-    public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> {
             JFrame frame = new JFrame("The Junie Fighter");
-            ShootingGame game = new ShootingGame();
+            ShootingGame game = new ShootingGame(gameClock, seed, config, active, report, assets);
+            game.world.profiler.setEnabled(profiling);
+            game.setTickRate(tickRate);
+            game.setQuality(quality);
+            game.setSoftwareRendering(software);
+            if (port != null) {
+                try {
+                    game.serve(port);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    System.exit(1);
+                }
+            }
             frame.add(game);
-            frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+            if (record == null) {
+                frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+            } else {
+                // Stop the game before exiting, so the recording ends on a complete step
+                game.startRecording();
+                frame.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+                frame.addWindowListener(new WindowAdapter() {
+                    @Override
+                    public void windowClosing(WindowEvent e) {
+                        game.stop();
+                        try {
+                            game.saveRecording(record);
+                        } catch (IOException ex) {
+                            ex.printStackTrace();
+                        }
+                        System.exit(0);
+                    }
+                });
+            }
             frame.setResizable(false);
             frame.pack();
             frame.setLocationRelativeTo(null);
@@ -632,216 +438,4 @@ public class ShootingGame extends JPanel implements Runnable {
             game.start();
         });
     }
-
-    // Game object classes
-
-    private class Fighter {
-        private float x, y;
-        private int width, height;
-        private float speed = 200;
-        private long lastShotTime = 0;
-
-        public Fighter(float x, float y) {
-            this.x = x;
-            this.y = y;
-            this.width = fighterImage.getWidth() * 2;
-            this.height = fighterImage.getHeight() * 2;
-        }
-
-        public void move(int dx, int dy, float deltaTime) {
-            if (dx != 0 || dy != 0) {
-                float length = (float) Math.sqrt(dx * dx + dy * dy);
-                dx /= length;
-                dy /= length;
-
-                x += dx * speed * deltaTime;
-                y += dy * speed * deltaTime;
-            }
-        }
-
-        public void shoot() {
-            long currentTime = System.currentTimeMillis();
-
-            // Limit shooting rate and max bullets
-            if (currentTime - lastShotTime > 250 && bullets.size() < 2) {
-                bullets.add(new Bullet(x + width, y + height / 2));
-                lastShotTime = currentTime;
-                playSound("/se_shot_001.wav");
-            }
-        }
-    }
-
-    private class Bullet {
-        private float x, y;
-        private float velocityX = 400;
-        private float radius = 5;
-
-        public Bullet(float x, float y) {
-            this.x = x;
-            this.y = y;
-        }
-
-        public void update(float deltaTime) {
-            x += velocityX * deltaTime;
-        }
-    }
-
-    private class Enemy {
-        private float x, y;
-        private float baseY;
-        private float time = 0;
-        private float speed = 100;
-        private int width, height;
-
-        public Enemy(float x, float y) {
-            this.x = x;
-            this.y = y;
-            this.baseY = y;
-            this.width = enemyImage.getWidth() * 2;
-            this.height = enemyImage.getHeight() * 2;
-        }
-
-        public void update(float deltaTime) {
-            time += deltaTime;
-            x -= speed * deltaTime;
-            y = baseY + (float) Math.sin(time * 3) * 50;
-        }
-    }
-
-    private class EnemyBullet {
-        private float x, y;
-        private float velocityX = -200;
-        private float velocityY = 0;
-        private float radius = 5;
-
-        public EnemyBullet(float x, float y) {
-            this.x = x;
-            this.y = y;
-        }
-
-        public EnemyBullet(float x, float y, float dirX, float dirY) {
-            this.x = x;
-            this.y = y;
-            float speed = fighter.speed * 2;
-            this.velocityX = dirX * speed;
-            this.velocityY = dirY * speed;
-        }
-
-        public void update(float deltaTime) {
-            x += velocityX * deltaTime;
-            y += velocityY * deltaTime;
-        }
-    }
-
-    private class Boss {
-        private float x, y;
-        private float targetY;
-        private float speed = 150;
-        private int width, height;
-        private int hits = 0;
-        private int state = 0; // 0: normal, 1: moving left, 2: waiting, 3: moving right
-        private float stateTime = 0;
-
-        public Boss(float x, float y) {
-            this.x = x;
-            this.y = y;
-            this.targetY = y;
-            this.width = bossImage.getWidth() * 8;
-            this.height = bossImage.getHeight() * 8;
-        }
-
-        public void update(float deltaTime) {
-            stateTime += deltaTime;
-
-            switch (state) {
-                case 0: // Normal state - move up and down
-                    if (Math.abs(y - targetY) < 5) {
-                        targetY = random.nextInt(WINDOW_HEIGHT - height - 100) + 50;
-                    }
-
-                    float dy = targetY - y;
-                    y += Math.signum(dy) * Math.min(Math.abs(dy), speed * deltaTime);
-
-                    // Occasionally move left
-                    if (random.nextFloat() < 0.005) {
-                        state = 1;
-                        stateTime = 0;
-                    }
-
-                    // Move into screen at start
-                    if (x > WINDOW_WIDTH - width - 20) {
-                        x -= speed * deltaTime;
-                    }
-                    break;
-
-                case 1: // Moving left
-                    x -= speed * deltaTime;
-                    if (x <= 0) {
-                        state = 2;
-                        stateTime = 0;
-                    }
-                    break;
-
-                case 2: // Waiting at left
-                    if (stateTime >= 1.0f) {
-                        state = 3;
-                        stateTime = 0;
-                    }
-                    break;
-
-                case 3: // Moving right
-                    x += speed * deltaTime;
-                    if (x >= WINDOW_WIDTH - width - 20) {
-                        x = WINDOW_WIDTH - width - 20;
-                        state = 0;
-                        stateTime = 0;
-                    }
-                    break;
-            }
-        }
-
-        public void hit() {
-            hits++;
-        }
-
-        public int getHits() {
-            return hits;
-        }
-    }
-
-    private class Explosion {
-        private float x, y;
-        private int width, height;
-        private float time = 0;
-        private float duration = 0.8f;
-        private int currentFrame = 0;
-        private float frameTime = 0;
-        private boolean isBoss;
-
-        public Explosion(float x, float y, int width, int height, boolean isBoss) {
-            this.x = x;
-            this.y = y;
-            this.width = width;
-            this.height = height;
-            this.isBoss = isBoss;
-        }
-
-        public void update(float deltaTime) {
-            time += deltaTime;
-            frameTime += deltaTime;
-
-            if (frameTime >= 0.1f) { 
-                currentFrame = (currentFrame + 1) % 2;
-                frameTime = 0;
-            }
-        }
-
-        public boolean isFinished() {
-            return time >= duration;
-        }
-
-        public int getCurrentFrame() {
-            return currentFrame;
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,309 @@
+package one.cafebabe.game;
+
+import java.nio.ByteBuffer;
+
+// Encodes RenderSnapshots into compact frames for spectators, and decodes them back. One
+// instance encodes or decodes one stream; both sides keep the same history of the last two
+// frames, so a frame only carries what the history does not predict.
+//
+// Positions are quantised to 1/4 pixel. Each is predicted from the same value in the last
+// two frames, assuming the entity in that slot kept its velocity, and only the difference is
+// written, as a zigzag varint. Things that move in straight lines cost one byte per
+// coordinate, and most of the rest two. Entity stores have no stable identities, so a slot
+// that another entity moved into just costs a larger difference. A keyframe clears the
+// history and so can be decoded without any previous frame; viewers start at one.
+//
+// A frame is: type (KEYFRAME with the three store capacities, or DELTA), tick, flags (game
+// state, can restart, title transitioning, boss visible), score, boss hits, the title
+// fighter, fighter and boss positions, then for the bullets, enemies and enemy bullets their
+// count, radius and positions, the explosions with their sizes and animation frame, and
+// finally the particles with their positions and one byte of colour (3 bits) and fade
+// (5 bits). Integers are varints; stores larger than the decoder's are cut off. Particles fly
+// in nearly straight lines, so even a boss' debris costs about three bytes a particle.
+final class SnapshotCodec {
+    static final byte KEYFRAME = 'K';
+    static final byte DELTA = 'D';
+
+    private static final float SCALE = 4;
+
+    private final Channel scalars = new Channel(6);
+    private Channel bullets;
+    private Channel enemies;
+    private Channel enemyBullets;
+    private final Channel explosions = new Channel(2 * RenderSnapshot.MAX_EXPLOSIONS);
+    private final Channel particles = new Channel(2 * GameWorld.MAX_PARTICLES);
+    private boolean synced;
+
+    // For an encoder, the capacities of the snapshots it encodes
+    SnapshotCodec(int maxBullets, int maxEnemies, int maxEnemyBullets) {
+        allocate(maxBullets, maxEnemies, maxEnemyBullets);
+    }
+
+    // For a decoder, which takes the capacities from the first keyframe
+    SnapshotCodec() {
+    }
+
+    private void allocate(int maxBullets, int maxEnemies, int maxEnemyBullets) {
+        bullets = new Channel(2 * maxBullets);
+        enemies = new Channel(2 * maxEnemies);
+        enemyBullets = new Channel(2 * maxEnemyBullets);
+    }
+
+    // The store capacities of the snapshots of this stream; 0 for a decoder before its first keyframe
+    int maxBullets() {
+        return bullets == null ? 0 : bullets.capacity / 2;
+    }
+
+    int maxEnemies() {
+        return enemies == null ? 0 : enemies.capacity / 2;
+    }
+
+    int maxEnemyBullets() {
+        return enemyBullets == null ? 0 : enemyBullets.capacity / 2;
+    }
+
+    // An upper bound of the size of a frame of snapshots with the given capacities
+    static int maxFrameBytes(int maxBullets, int maxEnemies, int maxEnemyBullets) {
+        return 64 + (6 + 2 * (maxBullets + maxEnemies + maxEnemyBullets + RenderSnapshot.MAX_EXPLOSIONS)) * 5
+                + RenderSnapshot.MAX_EXPLOSIONS * 11 + GameWorld.MAX_PARTICLES * 11;
+    }
+
+    void encode(RenderSnapshot s, long tick, boolean keyframe, ByteBuffer out) {
+        if (keyframe) {
+            out.put(KEYFRAME);
+            putVarLong(out, maxBullets());
+            putVarLong(out, maxEnemies());
+            putVarLong(out, maxEnemyBullets());
+            clearHistory();
+        } else {
+            out.put(DELTA);
+        }
+        putVarLong(out, tick);
+        out.put((byte) (s.gameState.ordinal()
+                | (s.canRestart ? 4 : 0) | (s.titleTransitioning ? 8 : 0) | (s.bossVisible ? 16 : 0)));
+        putVarLong(out, s.score);
+        putVarLong(out, s.bossHits);
+
+        Channel c = scalars;
+        c.begin(6);
+        c.encode(out, 0, s.titleFighterX);
+        c.encode(out, 1, s.titleFighterY);
+        c.encode(out, 2, s.fighterX);
+        c.encode(out, 3, s.fighterY);
+        c.encode(out, 4, s.bossX);
+        c.encode(out, 5, s.bossY);
+
+        encodeStore(out, s.bullets, bullets);
+        encodeStore(out, s.enemies, enemies);
+        encodeStore(out, s.enemyBullets, enemyBullets);
+
+        int n = s.explosionCount;
+        putVarLong(out, n);
+        explosions.begin(2 * n);
+        for (int i = 0; i < n; i++) {
+            explosions.encode(out, 2 * i, s.explosionX[i]);
+            explosions.encode(out, 2 * i + 1, s.explosionY[i]);
+            putVarLong(out, s.explosionWidth[i]);
+            putVarLong(out, s.explosionHeight[i]);
+            out.put((byte) s.explosionFrame[i]);
+        }
+
+        ParticleSystem p = s.particles;
+        n = p.count;
+        putVarLong(out, n);
+        particles.begin(2 * n);
+        for (int i = 0; i < n; i++) {
+            particles.encode(out, 2 * i, p.x[i]);
+            particles.encode(out, 2 * i + 1, p.y[i]);
+            out.put((byte) (p.color[i] << 5 | Math.round(p.fade(i) * 31)));
+        }
+    }
+
+    private static void encodeStore(ByteBuffer out, EntityStore store, Channel channel) {
+        int n = Math.min(store.count, channel.capacity / 2);
+        putVarLong(out, n);
+        out.put((byte) Math.round((n > 0 ? store.radius[0] : 0) * SCALE));
+        channel.begin(2 * n);
+        for (int i = 0; i < n; i++) {
+            channel.encode(out, 2 * i, store.x[i]);
+            channel.encode(out, 2 * i + 1, store.y[i]);
+        }
+    }
+
+    // Decodes the frame into the snapshot and returns its tick, or returns -1 and leaves the
+    // snapshot alone if the frame is a delta and no keyframe was decoded yet
+    long decode(ByteBuffer in, RenderSnapshot s) {
+        byte type = in.get();
+        if (type == KEYFRAME) {
+            int maxBullets = (int) getVarLong(in);
+            int maxEnemies = (int) getVarLong(in);
+            int maxEnemyBullets = (int) getVarLong(in);
+            if (maxBullets != maxBullets() || maxEnemies != maxEnemies() || maxEnemyBullets != maxEnemyBullets()) {
+                allocate(maxBullets, maxEnemies, maxEnemyBullets);
+            }
+            clearHistory();
+            synced = true;
+        } else if (type != DELTA) {
+            throw new IllegalArgumentException("Not a snapshot frame: " + type);
+        } else if (!synced) {
+            return -1;
+        }
+
+        long tick = getVarLong(in);
+        int flags = in.get();
+        s.gameState = GameWorld.GameState.values()[flags & 3];
+        s.canRestart = (flags & 4) != 0;
+        s.titleTransitioning = (flags & 8) != 0;
+        s.bossVisible = (flags & 16) != 0;
+        s.score = (int) getVarLong(in);
+        s.bossHits = (int) getVarLong(in);
+        s.alpha = 1;
+
+        Channel c = scalars;
+        c.begin(6);
+        s.titleFighterX = s.prevTitleFighterX = c.decode(in, 0);
+        s.titleFighterY = s.prevTitleFighterY = c.decode(in, 1);
+        s.fighterX = s.prevFighterX = c.decode(in, 2);
+        s.fighterY = s.prevFighterY = c.decode(in, 3);
+        s.bossX = s.prevBossX = c.decode(in, 4);
+        s.bossY = s.prevBossY = c.decode(in, 5);
+
+        decodeStore(in, s.bullets, bullets);
+        decodeStore(in, s.enemies, enemies);
+        decodeStore(in, s.enemyBullets, enemyBullets);
+
+        int n = (int) getVarLong(in);
+        explosions.begin(2 * n);
+        int kept = Math.min(n, RenderSnapshot.MAX_EXPLOSIONS);
+        for (int i = 0; i < n; i++) {
+            float x = explosions.decode(in, 2 * i);
+            float y = explosions.decode(in, 2 * i + 1);
+            int width = (int) getVarLong(in);
+            int height = (int) getVarLong(in);
+            int frame = in.get();
+            if (i < kept) {
+                s.explosionX[i] = x;
+                s.explosionY[i] = y;
+                s.explosionWidth[i] = width;
+                s.explosionHeight[i] = height;
+                s.explosionFrame[i] = frame;
+            }
+        }
+        s.explosionCount = kept;
+
+        ParticleSystem p = s.particles;
+        n = (int) getVarLong(in);
+        particles.begin(2 * n);
+        kept = Math.min(n, p.capacity);
+        for (int i = 0; i < n; i++) {
+            float x = particles.decode(in, 2 * i);
+            float y = particles.decode(in, 2 * i + 1);
+            int look = in.get() & 0xFF;
+            if (i < kept) {
+                p.x[i] = x;
+                p.y[i] = y;
+                p.vx[i] = p.vy[i] = 0;
+                p.color[i] = (byte) (look >>> 5);
+                p.life[i] = (look & 31) / 31f;
+                p.lifetime[i] = 1;
+            }
+        }
+        p.count = kept;
+        return tick;
+    }
+
+    private static void decodeStore(ByteBuffer in, EntityStore store, Channel channel) {
+        int n = (int) getVarLong(in);
+        float radius = in.get() / SCALE;
+        channel.begin(2 * n);
+        store.clear();
+        for (int i = 0; i < n; i++) {
+            float x = channel.decode(in, 2 * i);
+            float y = channel.decode(in, 2 * i + 1);
+            int j = store.add(x, y);
+            if (j >= 0) {
+                store.radius[j] = radius;
+            }
+        }
+    }
+
+    private void clearHistory() {
+        scalars.clear();
+        bullets.clear();
+        enemies.clear();
+        enemyBullets.clear();
+        explosions.clear();
+        particles.clear();
+    }
+
+    static void putVarLong(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static long getVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    // Quantised values of the current frame and the two before it, by slot
+    private static final class Channel {
+        final int capacity;
+        private int[] current, last, beforeLast;
+        private int count, lastCount, beforeLastCount;
+
+        Channel(int values) {
+            capacity = values;
+            current = new int[values];
+            last = new int[values];
+            beforeLast = new int[values];
+        }
+
+        void clear() {
+            count = lastCount = beforeLastCount = 0;
+        }
+
+        // Starts a frame with the given number of values: the current frame becomes the last
+        void begin(int n) {
+            int[] oldest = beforeLast;
+            beforeLast = last;
+            beforeLastCount = lastCount;
+            last = current;
+            lastCount = count;
+            current = oldest;
+            count = Math.min(n, capacity);
+        }
+
+        private int predict(int i) {
+            if (i < lastCount) {
+                return i < beforeLastCount ? 2 * last[i] - beforeLast[i] : last[i];
+            }
+            return 0;
+        }
+
+        void encode(ByteBuffer out, int i, float value) {
+            int q = Math.round(value * SCALE);
+            int residual = q - predict(i);
+            putVarLong(out, (residual << 1) ^ (residual >> 31));
+            current[i] = q;
+        }
+
+        float decode(ByteBuffer in, int i) {
+            int zigzag = (int) getVarLong(in);
+            int q = predict(i) + ((zigzag >>> 1) ^ -(zigzag & 1));
+            if (i < capacity) {
+                current[i] = q;
+            }
+            return q / SCALE;
+        }
+    }
+}
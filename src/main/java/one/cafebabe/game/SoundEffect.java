@@ -0,0 +1,20 @@
+package one.cafebabe.game;
+
+// The sound effects of the game, with their asset names and how many copies of each may play
+// at the same time
+enum SoundEffect {
+    JINGLE("jingle_original_interval_003.wav", 1),
+    SHOT("se_shot_001.wav", 2),
+    ENEMY_HIT("se_hit_007.wav", 3),
+    BOSS_HIT("se_shot_003.wav", 2),
+    BOSS_DEFEAT_1("se_hit_010.wav", 1),
+    BOSS_DEFEAT_2("se_hit_012.wav", 1);
+
+    final String resource;
+    final int polyphony;
+
+    SoundEffect(String resource, int polyphony) {
+        this.resource = resource;
+        this.polyphony = polyphony;
+    }
+}
@@ -0,0 +1,14 @@
+package one.cafebabe.game;
+
+// Sound effects requested by the game simulation. Implementations must return quickly,
+// because play() is called from the game thread.
+interface SoundPlayer {
+    // Used when there is no audio device, e.g. in headless runs
+    SoundPlayer SILENT = effect -> {
+    };
+
+    void play(SoundEffect effect);
+
+    default void close() {
+    }
+}
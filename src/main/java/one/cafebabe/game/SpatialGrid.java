@@ -0,0 +1,124 @@
+package one.cafebabe.game;
+
+import java.util.Arrays;
+
+// Uniform-grid spatial hash over the playfield, used as the collision broad phase.
+// The entities of one EntityStore are bucketed by the cells their bounds overlap, so a
+// query only looks at entities in the cells around the query area instead of all of them.
+// The grid is rebuilt every step with a counting sort into preallocated arrays; entities
+// outside the playfield fall into the border cells, which keeps queries exact. Entities are
+// bucketed by the area they covered during the step, from their previous to their current
+// position, so the swept tests of Sweep find the same hits as testing every pair.
+final class SpatialGrid {
+    static final int CELL_SIZE = 48;
+    private static final int MARGIN = 2 * CELL_SIZE;
+
+    private final int columns, rows;
+    // Entity indices grouped by cell: cell c holds items[cellStart[c]] to items[cellStart[c + 1] - 1]
+    private final int[] cellStart;
+    private int[] items;
+
+    SpatialGrid(int width, int height) {
+        columns = (width + 2 * MARGIN) / CELL_SIZE + 1;
+        rows = (height + 2 * MARGIN) / CELL_SIZE + 1;
+        cellStart = new int[columns * rows + 1];
+        items = new int[256];
+    }
+
+    int column(float x) {
+        int c = (int) ((x + MARGIN) / CELL_SIZE);
+        return c < 0 ? 0 : c >= columns ? columns - 1 : c;
+    }
+
+    int row(float y) {
+        int r = (int) ((y + MARGIN) / CELL_SIZE);
+        return r < 0 ? 0 : r >= rows ? rows - 1 : r;
+    }
+
+    // Buckets boxes of the given size with their top left corner at (x, y), like enemies,
+    // by the bounds of where they were at the start and at the end of the step
+    void buildBoxes(EntityStore store, float width, float height) {
+        int cells = columns * rows;
+        Arrays.fill(cellStart, 0);
+
+        // Count the entities per cell, shifted by one so the prefix sum yields start offsets
+        int total = 0;
+        for (int i = 0; i < store.count; i++) {
+            float x = store.x[i], y = store.y[i], px = store.prevX[i], py = store.prevY[i];
+            int c0 = column(Math.min(x, px)), c1 = column(Math.max(x, px) + width);
+            int r0 = row(Math.min(y, py)), r1 = row(Math.max(y, py) + height);
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) {
+                    cellStart[r * columns + c + 1]++;
+                    total++;
+                }
+            }
+        }
+        for (int c = 0; c < cells; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        if (items.length < total) {
+            items = new int[Math.max(total, items.length * 2)];
+        }
+
+        // Fill the cells, using cellStart as a write cursor and shifting it back afterwards
+        for (int i = 0; i < store.count; i++) {
+            float x = store.x[i], y = store.y[i], px = store.prevX[i], py = store.prevY[i];
+            int c0 = column(Math.min(x, px)), c1 = column(Math.max(x, px) + width);
+            int r0 = row(Math.min(y, py)), r1 = row(Math.max(y, py) + height);
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) {
+                    items[cellStart[r * columns + c]++] = i;
+                }
+            }
+        }
+        for (int c = cells; c > 0; c--) {
+            cellStart[c] = cellStart[c - 1];
+        }
+        cellStart[0] = 0;
+    }
+
+    // The lowest index of a live box built with buildBoxes() that circle i of the other store
+    // touched on its way through the step (Sweep.circleBox), or -1. Picking the lowest index
+    // gives the same result as testing the boxes in order. Each cell lists its boxes in
+    // ascending index order, so a cell is done at its first hit. Boxes removed from the store
+    // since the grid was built are skipped, as the scan does.
+    int firstHit(EntityStore boxes, float width, float height, EntityStore circles, int i) {
+        float x0 = circles.prevX[i], y0 = circles.prevY[i], x1 = circles.x[i], y1 = circles.y[i];
+        float radius = circles.radius[i];
+        int found = Integer.MAX_VALUE;
+        int c0 = column(Math.min(x0, x1) - radius), c1 = column(Math.max(x0, x1) + radius);
+        int r0 = row(Math.min(y0, y1) - radius), r1 = row(Math.max(y0, y1) + radius);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * columns + c;
+                for (int k = cellStart[cell], end = cellStart[cell + 1]; k < end; k++) {
+                    int j = items[k];
+                    if (j >= found || j >= boxes.count) {
+                        break;
+                    }
+                    if (!boxes.isDead(j) && Sweep.circleBox(x0, y0, x1, y1, radius,
+                            boxes.prevX[j], boxes.prevY[j], boxes.x[j], boxes.y[j], width, height)) {
+                        found = j;
+                        break;
+                    }
+                }
+            }
+        }
+        return found == Integer.MAX_VALUE ? -1 : found;
+    }
+
+    // Same result as firstHit(), by testing every box. Cheaper than building the grid when
+    // there are only a few pairs to test.
+    static int scanForFirstHit(EntityStore boxes, float width, float height, EntityStore circles, int i) {
+        float x0 = circles.prevX[i], y0 = circles.prevY[i], x1 = circles.x[i], y1 = circles.y[i];
+        float r = circles.radius[i];
+        for (int j = 0; j < boxes.count; j++) {
+            if (!boxes.isDead(j) && Sweep.circleBox(x0, y0, x1, y1, r,
+                    boxes.prevX[j], boxes.prevY[j], boxes.x[j], boxes.y[j], width, height)) {
+                return j;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,180 @@
+package one.cafebabe.game;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+// Watches a game streamed by a SpectatorServer. A reader thread decodes the frames into
+// RenderSnapshots and publishes them through a TripleBuffer, and the panel draws them with
+// the same GameRenderer as the game itself, so the viewer sees what the player sees.
+// Frames are shown as they arrive, without interpolation.
+//
+// Usage: ShootingGame --watch=HOST:PORT
+//
+// Never serialized, though JPanel is Serializable.
+@SuppressWarnings("serial")
+final class SpectatorClient extends JPanel {
+    // A stream announcing larger stores than this, or sending frames larger than its stores
+    // allow, is taken for corrupt and closed
+    private static final int MAX_STORE = 1 << 20;
+    private static final int FRAME_MARGIN = 1024;
+    // Enough for the type and the three store capacities of a keyframe
+    private static final int HEADER_BYTES = 16;
+
+    private final SocketChannel channel;
+    private final SnapshotCodec codec = new SnapshotCodec();
+    private final SpriteSizes sizes;
+    private final GameRenderer renderer;
+    private ByteBuffer frame = ByteBuffer.allocateDirect(64 * 1024);
+    private int maxFrameBytes = frameBound(GameWorld.MAX_BULLETS, GameWorld.MAX_ENEMIES, GameWorld.MAX_ENEMY_BULLETS);
+
+    // Replaced by the reader thread when a keyframe announces larger stores
+    private volatile TripleBuffer<RenderSnapshot> snapshots;
+    private long frames;
+
+    SpectatorClient(SocketChannel channel) throws IOException {
+        this.channel = channel;
+        Assets assets = Assets.load();
+        sizes = assets.sizes;
+        renderer = new GameRenderer(new SpriteCache(assets));
+        renderer.setQuality(QualityController.adaptive(false));
+        snapshots = newSnapshots(GameWorld.MAX_BULLETS, GameWorld.MAX_ENEMIES, GameWorld.MAX_ENEMY_BULLETS);
+        setPreferredSize(new Dimension(GameWorld.WIDTH, GameWorld.HEIGHT));
+        setBackground(Color.BLACK);
+    }
+
+    private TripleBuffer<RenderSnapshot> newSnapshots(int maxBullets, int maxEnemies, int maxEnemyBullets) {
+        return new TripleBuffer<>(() -> {
+            RenderSnapshot snapshot = new RenderSnapshot(maxBullets, maxEnemies, maxEnemyBullets);
+            snapshot.fighterWidth = sizes.fighterWidth;
+            snapshot.fighterHeight = sizes.fighterHeight;
+            snapshot.enemyWidth = sizes.enemyWidth;
+            snapshot.enemyHeight = sizes.enemyHeight;
+            snapshot.bossWidth = sizes.bossWidth;
+            snapshot.bossHeight = sizes.bossHeight;
+            return snapshot;
+        });
+    }
+
+    private static int frameBound(int maxBullets, int maxEnemies, int maxEnemyBullets) {
+        return SnapshotCodec.maxFrameBytes(maxBullets, maxEnemies, maxEnemyBullets) + FRAME_MARGIN;
+    }
+
+    // Reads and shows frames until the server closes the connection or sends a corrupt one
+    private void receive() {
+        try {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            while (true) {
+                length.clear();
+                readFully(length);
+                int size = length.getInt(0);
+                if (size <= 0) {
+                    throw new IOException("Corrupt frame length " + size);
+                }
+                // A keyframe announces the stores that bound its own size, so read those first
+                frame.clear().limit(Math.min(size, HEADER_BYTES));
+                readFully(frame);
+                if (frame.get(0) == SnapshotCodec.KEYFRAME) {
+                    fitSnapshots();
+                }
+                if (size > maxFrameBytes) {
+                    throw new IOException("Frame of " + size + " bytes, larger than its stores allow");
+                }
+                if (frame.capacity() < size) {
+                    frame.flip();
+                    frame = ByteBuffer.allocateDirect(size).put(frame);
+                }
+                frame.limit(size);
+                readFully(frame);
+                frame.flip();
+
+                TripleBuffer<RenderSnapshot> buffers = snapshots;
+                RenderSnapshot snapshot = buffers.back();
+                if (codec.decode(frame, snapshot) < 0) {
+                    continue;
+                }
+                snapshot.sequence = ++frames;
+                buffers.publish();
+                repaint();
+            }
+        } catch (EOFException e) {
+            System.out.println("The game has ended");
+        } catch (IOException e) {
+            System.out.println("Lost the connection: " + e.getMessage());
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Makes the snapshots large enough for the stores announced by the keyframe whose start is
+    // in the frame buffer, and bounds the frames of the stream by them
+    private void fitSnapshots() throws IOException {
+        ByteBuffer header = frame.duplicate().flip().position(1);
+        int maxBullets, maxEnemies, maxEnemyBullets;
+        try {
+            maxBullets = store(SnapshotCodec.getVarLong(header));
+            maxEnemies = store(SnapshotCodec.getVarLong(header));
+            maxEnemyBullets = store(SnapshotCodec.getVarLong(header));
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Corrupt keyframe");
+        }
+        maxFrameBytes = frameBound(maxBullets, maxEnemies, maxEnemyBullets);
+        RenderSnapshot current = snapshots.back();
+        if (maxBullets > current.bullets.capacity || maxEnemies > current.enemies.capacity
+                || maxEnemyBullets > current.enemyBullets.capacity) {
+            snapshots = newSnapshots(maxBullets, maxEnemies, maxEnemyBullets);
+        }
+    }
+
+    private static int store(long capacity) throws IOException {
+        if (capacity < 0 || capacity > MAX_STORE) {
+            throw new IOException("Corrupt store capacity " + capacity);
+        }
+        return (int) capacity;
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        renderer.render((Graphics2D) g, snapshots.acquire());
+    }
+
+    static void watch(String address) throws IOException {
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Expected HOST:PORT: " + address);
+        }
+        SocketChannel channel = SocketChannel.open(
+                new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1))));
+        SpectatorClient client = new SpectatorClient(channel);
+        SwingUtilities.invokeLater(() -> {
+            JFrame frame = new JFrame("The Junie Fighter - watching " + address);
+            frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+            frame.add(client);
+            frame.setResizable(false);
+            frame.pack();
+            frame.setLocationRelativeTo(null);
+            frame.setVisible(true);
+        });
+        Thread reader = new Thread(client::receive, "Spectator reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+}
@@ -0,0 +1,198 @@
+package one.cafebabe.game;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+// Streams a game to spectators over TCP. The game loop calls publish() after every step; the
+// world is captured into a preallocated RenderSnapshot and encoded once with a SnapshotCodec
+// into a preallocated buffer, and the same bytes go to every viewer. All sockets are
+// non-blocking and serviced by the publishing thread, so there is no thread per viewer and a
+// slow viewer never holds up the game: what a viewer's socket does not take stays in its own
+// preallocated buffer, and when that is full the viewer skips frames until the next keyframe.
+//
+// On the wire each frame is a 4 byte length followed by the encoded frame. A keyframe is
+// sent every KEYFRAME_INTERVAL frames, and viewers start with the next one. While anyone is
+// watching, the server prints its bandwidth and publishing cost every 10 seconds.
+final class SpectatorServer implements Closeable {
+    static final int KEYFRAME_INTERVAL = 60;
+    // Frames a viewer may fall behind before it starts skipping
+    private static final int BUFFERED_FRAMES = 8;
+
+    private final ServerSocketChannel server;
+    private final RenderSnapshot snapshot;
+    private final SnapshotCodec codec;
+    private final ByteBuffer frame;
+    private final int viewerBufferBytes;
+    private final List<Viewer> viewers = new ArrayList<>();
+    private long tick;
+    private long reportIntervalNanos = 10_000_000_000L;
+
+    // Totals since the last report
+    private long lastReport = System.nanoTime();
+    private long frames, keyframes, frameBytes, sentBytes, skippedFrames, encodeNanos, sendNanos, viewerFrames;
+
+    // Port 0 picks a free port
+    SpectatorServer(int port, GameConfig config) throws IOException {
+        int maxBullets = config.bulletCapacity, maxEnemies = config.enemyCapacity;
+        int maxEnemyBullets = config.enemyBulletCapacity;
+        snapshot = new RenderSnapshot(maxBullets, maxEnemies, maxEnemyBullets);
+        codec = new SnapshotCodec(maxBullets, maxEnemies, maxEnemyBullets);
+        int maxFrameBytes = 4 + SnapshotCodec.maxFrameBytes(maxBullets, maxEnemies, maxEnemyBullets);
+        frame = ByteBuffer.allocateDirect(maxFrameBytes);
+        // At least one whole frame, so what is left of a frame written to an up to date viewer always fits
+        viewerBufferBytes = Math.max(maxFrameBytes, BUFFERED_FRAMES * Math.min(maxFrameBytes, 64 * 1024));
+        server = ServerSocketChannel.open();
+        // Room for many viewers connecting between two steps
+        server.bind(new InetSocketAddress(port), 1024);
+        server.configureBlocking(false);
+    }
+
+    int port() {
+        return server.socket().getLocalPort();
+    }
+
+    int viewers() {
+        return viewers.size();
+    }
+
+    // Sends the state of the world to every viewer, after accepting new ones
+    void publish(GameWorld world) {
+        acceptViewers();
+
+        long start = System.nanoTime();
+        snapshot.capture(world, 1);
+        boolean keyframe = tick % KEYFRAME_INTERVAL == 0;
+        frame.clear();
+        frame.position(4);
+        codec.encode(snapshot, tick++, keyframe, frame);
+        frame.putInt(0, frame.position() - 4);
+        frame.flip();
+        long encoded = System.nanoTime();
+
+        for (int i = 0; i < viewers.size(); i++) {
+            Viewer viewer = viewers.get(i);
+            try {
+                viewer.send(frame, keyframe);
+            } catch (IOException e) {
+                // The viewer went away
+                viewer.close();
+                viewers.remove(i--);
+            }
+        }
+
+        frames++;
+        if (keyframe) {
+            keyframes++;
+        }
+        frameBytes += frame.limit();
+        viewerFrames += viewers.size();
+        encodeNanos += encoded - start;
+        long end = System.nanoTime();
+        sendNanos += end - encoded;
+
+        if (end - lastReport >= reportIntervalNanos) {
+            if (viewerFrames > 0) {
+                System.out.println("Spectators: " + report((end - lastReport) / 1e9));
+            }
+            resetStats(end);
+        }
+    }
+
+    private void acceptViewers() {
+        try {
+            SocketChannel channel;
+            while ((channel = server.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                viewers.add(new Viewer(channel, viewerBufferBytes));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // How often publish() prints the report, Long.MAX_VALUE for never
+    void setReportInterval(long nanos) {
+        reportIntervalNanos = nanos;
+    }
+
+    // Average frame size, bandwidth and publishing cost per viewer over the given time
+    String report(double seconds) {
+        double averageViewers = frames == 0 ? 0.0 : (double) viewerFrames / frames;
+        return String.format("%d viewers, %.0f bytes/frame (%d keyframes), %.1f KB/s per viewer, " +
+                        "encode %.1f us/frame, send %.2f us/frame per viewer (%.3f%% of a core), %d frames skipped",
+                viewers.size(), frames == 0 ? 0.0 : (double) frameBytes / frames, keyframes,
+                viewerFrames == 0 ? 0.0 : sentBytes / 1024.0 / seconds / averageViewers,
+                frames == 0 ? 0.0 : encodeNanos / 1e3 / frames,
+                viewerFrames == 0 ? 0.0 : sendNanos / 1e3 / viewerFrames,
+                viewerFrames == 0 ? 0.0 : 100 * sendNanos / 1e9 / seconds / averageViewers, skippedFrames);
+    }
+
+    void resetStats(long now) {
+        lastReport = now;
+        frames = keyframes = frameBytes = sentBytes = skippedFrames = encodeNanos = sendNanos = viewerFrames = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (int i = 0; i < viewers.size(); i++) {
+            viewers.get(i).close();
+        }
+        viewers.clear();
+        server.close();
+    }
+
+    private final class Viewer {
+        private final SocketChannel channel;
+        // Bytes the socket did not take yet, in write mode
+        private final ByteBuffer pending;
+        // False until the viewer gets a keyframe, and again after it had to skip a frame
+        private boolean synced;
+
+        Viewer(SocketChannel channel, int bufferBytes) {
+            this.channel = channel;
+            pending = ByteBuffer.allocateDirect(bufferBytes);
+        }
+
+        void send(ByteBuffer frame, boolean keyframe) throws IOException {
+            flush();
+            if (!synced && !keyframe) {
+                return;
+            }
+            if (pending.position() == 0) {
+                // Up to date: write straight from the shared frame, and keep only what is left
+                sentBytes += channel.write(frame);
+            }
+            if (frame.remaining() > pending.remaining()) {
+                synced = false;
+                skippedFrames++;
+            } else {
+                pending.put(frame);
+                synced = true;
+            }
+            frame.rewind();
+        }
+
+        private void flush() throws IOException {
+            if (pending.position() > 0) {
+                pending.flip();
+                sentBytes += channel.write(pending);
+                pending.compact();
+            }
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
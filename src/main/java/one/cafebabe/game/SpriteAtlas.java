@@ -0,0 +1,193 @@
+package one.cafebabe.game;
+
+import javax.imageio.ImageIO;
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// All sprite frames packed into one image, with an index of where each frame is. The packAtlas
+// build task runs main() over the sprite PNGs and puts atlas.png and atlas.index into the asset
+// bundle; without them (e.g. when running from an IDE) the atlas is packed from the loose PNGs
+// at startup. The index is text, one frame per line: "<name> <x> <y> <width> <height>", where
+// the name is the file name without ".png". Animation frames are numbered from 1, like
+// explosion1 and explosion2.
+final class SpriteAtlas {
+    static final String IMAGE = "atlas.png";
+    static final String INDEX = "atlas.index";
+
+    static final String FIGHTER = "fighter";
+    static final String ENEMY = "enemy";
+    static final String BOSS = "boss";
+    static final String EXPLOSION = "explosion";
+    static final int EXPLOSION_FRAMES = 2;
+
+    // Transparent pixels between frames, so that scaling a frame never picks up its neighbour
+    private static final int PADDING = 1;
+
+    final BufferedImage image;
+    private final Map<String, int[]> regions;
+
+    private SpriteAtlas(BufferedImage image, Map<String, int[]> regions) {
+        this.image = image;
+        this.regions = regions;
+    }
+
+    // x, y, width and height of the frame
+    int[] region(String name) {
+        int[] region = regions.get(name);
+        if (region == null) {
+            throw new IllegalArgumentException("No such sprite frame: " + name);
+        }
+        return region;
+    }
+
+    static String explosionFrame(int frame) {
+        return EXPLOSION + (frame + 1);
+    }
+
+    // Loads the packed atlas from the bundle, or packs the loose sprites in it
+    static SpriteAtlas load(AssetBundle bundle) throws IOException {
+        if (!bundle.contains(INDEX)) {
+            Map<String, BufferedImage> frames = new LinkedHashMap<>();
+            for (String name : frameNames()) {
+                try (InputStream in = bundle.open(name + ".png")) {
+                    frames.put(name, ImageIO.read(in));
+                }
+            }
+            return pack(frames);
+        }
+        BufferedImage image;
+        try (InputStream in = bundle.open(IMAGE)) {
+            image = ImageIO.read(in);
+        }
+        return new SpriteAtlas(image, readIndex(bundle));
+    }
+
+    // The frame sizes without decoding the atlas image
+    static Map<String, int[]> readIndex(AssetBundle bundle) throws IOException {
+        Map<String, int[]> regions = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(bundle.open(INDEX), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(" ");
+                if (fields.length != 5) {
+                    throw new IOException("Malformed atlas index line: " + line);
+                }
+                regions.put(fields[0], new int[]{Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+                        Integer.parseInt(fields[3]), Integer.parseInt(fields[4])});
+            }
+        }
+        return regions;
+    }
+
+    // The frames the game draws
+    static String[] frameNames() {
+        String[] names = new String[3 + EXPLOSION_FRAMES];
+        names[0] = FIGHTER;
+        names[1] = ENEMY;
+        names[2] = BOSS;
+        for (int i = 0; i < EXPLOSION_FRAMES; i++) {
+            names[3 + i] = explosionFrame(i);
+        }
+        return names;
+    }
+
+    static SpriteAtlas pack(Map<String, BufferedImage> frames) {
+        String[] names = frames.keySet().toArray(new String[0]);
+        int[] widths = new int[names.length];
+        int[] heights = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            widths[i] = frames.get(names[i]).getWidth();
+            heights[i] = frames.get(names[i]).getHeight();
+        }
+        int[][] positions = new int[names.length][];
+        int[] size = layout(widths, heights, positions);
+
+        BufferedImage image = new BufferedImage(size[0], size[1], BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        // Copy the pixels as they are instead of blending them with the empty atlas
+        g.setComposite(AlphaComposite.Src);
+        Map<String, int[]> regions = new LinkedHashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            g.drawImage(frames.get(names[i]), positions[i][0], positions[i][1], null);
+            regions.put(names[i], new int[]{positions[i][0], positions[i][1], widths[i], heights[i]});
+        }
+        g.dispose();
+        return new SpriteAtlas(image, regions);
+    }
+
+    // Places the rectangles on shelves, tallest first, and returns the width and height of the
+    // whole; positions[i] becomes the x and y of rectangle i
+    static int[] layout(int[] widths, int[] heights, int[][] positions) {
+        Integer[] order = new Integer[widths.length];
+        int area = 0, widest = 0;
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+            area += (widths[i] + PADDING) * (heights[i] + PADDING);
+            widest = Math.max(widest, widths[i] + PADDING);
+        }
+        Arrays.sort(order, (a, b) -> heights[b] - heights[a]);
+        int maxWidth = Math.max(widest, (int) Math.ceil(Math.sqrt(area)));
+
+        int x = 0, y = 0, shelfHeight = 0, width = 0;
+        for (int i : order) {
+            if (x + widths[i] + PADDING > maxWidth) {
+                x = 0;
+                y += shelfHeight;
+                shelfHeight = 0;
+            }
+            positions[i] = new int[]{x, y};
+            x += widths[i] + PADDING;
+            width = Math.max(width, x);
+            shelfHeight = Math.max(shelfHeight, heights[i] + PADDING);
+        }
+        return new int[]{Math.max(1, width), Math.max(1, y + shelfHeight)};
+    }
+
+    void write(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        ImageIO.write(image, "png", directory.resolve(IMAGE).toFile());
+        try (Writer out = Files.newBufferedWriter(directory.resolve(INDEX), StandardCharsets.UTF_8)) {
+            out.write("# name x y width height\n");
+            for (Map.Entry<String, int[]> entry : regions.entrySet()) {
+                int[] r = entry.getValue();
+                out.write(entry.getKey() + " " + r[0] + " " + r[1] + " " + r[2] + " " + r[3] + "\n");
+            }
+        }
+    }
+
+    // Build step: SpriteAtlas OUTPUT_DIRECTORY SPRITE.png...
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Usage: SpriteAtlas OUTPUT_DIRECTORY SPRITE.png...");
+        }
+        Map<String, BufferedImage> frames = new LinkedHashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            Path file = Paths.get(args[i]);
+            String name = file.getFileName().toString();
+            BufferedImage frame = ImageIO.read(file.toFile());
+            if (frame == null) {
+                throw new IOException("Not an image: " + file);
+            }
+            frames.put(name.endsWith(".png") ? name.substring(0, name.length() - 4) : name, frame);
+        }
+        SpriteAtlas atlas = pack(frames);
+        atlas.write(Paths.get(args[0]));
+    }
+}
@@ -0,0 +1,240 @@
+package one.cafebabe.game;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsDevice;
+import java.awt.Image;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.VolatileImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// The sprites of the game, scaled once to the size they are drawn at and packed into one
+// image, so that drawing a sprite is a 1:1 copy of a rectangle of that image that Java2D can
+// accelerate, and every sprite comes from the same texture. The layout is known up front from
+// the sprite sizes; the pixels are drawn in from the SpriteAtlas once it has loaded, and
+// nothing is drawn until then.
+//
+// The scaled image is a managed image compatible with the display, which Java2D keeps in
+// video memory itself. On screen an explicit VolatileImage copy is also kept, and redrawn
+// from the scaled image whenever its video memory is lost. The software renderer asks for the
+// same layout as plain ARGB pixels instead.
+final class SpriteCache {
+    final Sprite fighter;
+    final Sprite enemy;
+    final Sprite boss;
+    private final Sprite[] enemyExplosion;
+    private final Sprite[] bossExplosion;
+    private final Sprite[] sprites;
+    private final CompletableFuture<SpriteAtlas> atlas;
+
+    // The scaled sprites, laid out like this
+    private final int width, height;
+    private GraphicsConfiguration config;
+    private BufferedImage scaled;
+    private VolatileImage accelerated;
+    private int[] pixels;
+
+    SpriteCache(BufferedImage fighterImage, BufferedImage enemyImage, BufferedImage bossImage,
+                BufferedImage explosionImage1, BufferedImage explosionImage2) {
+        this(SpriteSizes.of(fighterImage, enemyImage, bossImage), CompletableFuture.completedFuture(
+                SpriteAtlas.pack(frames(fighterImage, enemyImage, bossImage, explosionImage1, explosionImage2))));
+    }
+
+    SpriteCache(Assets assets) {
+        this(assets.sizes, assets.atlas);
+    }
+
+    private SpriteCache(SpriteSizes sizes, CompletableFuture<SpriteAtlas> atlas) {
+        this.atlas = atlas;
+
+        // Fighter and enemies are drawn at twice their size, the boss at eight times
+        fighter = new Sprite(SpriteAtlas.FIGHTER, sizes.fighterWidth * 2, sizes.fighterHeight * 2);
+        enemy = new Sprite(SpriteAtlas.ENEMY, sizes.enemyWidth * 2, sizes.enemyHeight * 2);
+        boss = new Sprite(SpriteAtlas.BOSS, sizes.bossWidth * 8, sizes.bossHeight * 8);
+
+        // Explosions take the size of what exploded
+        enemyExplosion = new Sprite[SpriteAtlas.EXPLOSION_FRAMES];
+        bossExplosion = new Sprite[SpriteAtlas.EXPLOSION_FRAMES];
+        for (int frame = 0; frame < SpriteAtlas.EXPLOSION_FRAMES; frame++) {
+            String name = SpriteAtlas.explosionFrame(frame);
+            enemyExplosion[frame] = new Sprite(name, enemy.width, enemy.height);
+            bossExplosion[frame] = new Sprite(name, boss.width, boss.height);
+        }
+
+        sprites = new Sprite[3 + 2 * SpriteAtlas.EXPLOSION_FRAMES];
+        sprites[0] = fighter;
+        sprites[1] = enemy;
+        sprites[2] = boss;
+        System.arraycopy(enemyExplosion, 0, sprites, 3, enemyExplosion.length);
+        System.arraycopy(bossExplosion, 0, sprites, 3 + enemyExplosion.length, bossExplosion.length);
+        int[] widths = new int[sprites.length];
+        int[] heights = new int[sprites.length];
+        for (int i = 0; i < sprites.length; i++) {
+            widths[i] = sprites[i].width;
+            heights[i] = sprites[i].height;
+        }
+        int[][] positions = new int[sprites.length][];
+        int[] size = SpriteAtlas.layout(widths, heights, positions);
+        width = size[0];
+        height = size[1];
+        for (int i = 0; i < sprites.length; i++) {
+            sprites[i].x = positions[i][0];
+            sprites[i].y = positions[i][1];
+        }
+    }
+
+    private static Map<String, BufferedImage> frames(BufferedImage fighter, BufferedImage enemy, BufferedImage boss,
+                                                     BufferedImage explosion1, BufferedImage explosion2) {
+        Map<String, BufferedImage> frames = new LinkedHashMap<>();
+        frames.put(SpriteAtlas.FIGHTER, fighter);
+        frames.put(SpriteAtlas.ENEMY, enemy);
+        frames.put(SpriteAtlas.BOSS, boss);
+        frames.put(SpriteAtlas.explosionFrame(0), explosion1);
+        frames.put(SpriteAtlas.explosionFrame(1), explosion2);
+        return frames;
+    }
+
+    // The explosion frame at the size of an enemy or the boss, or null for any other size
+    Sprite explosion(int frame, int width, int height) {
+        if (width == enemy.width && height == enemy.height) {
+            return enemyExplosion[frame];
+        } else if (width == boss.width && height == boss.height) {
+            return bossExplosion[frame];
+        }
+        return null;
+    }
+
+    void drawExplosion(Graphics2D g, int frame, int x, int y, int width, int height) {
+        Sprite sprite = explosion(frame, width, height);
+        if (sprite != null) {
+            sprite.draw(g, x, y);
+        } else {
+            SpriteAtlas loaded = loaded();
+            if (loaded != null) {
+                int[] r = loaded.region(SpriteAtlas.explosionFrame(frame));
+                g.drawImage(loaded.image, x, y, x + width, y + height, r[0], r[1], r[0] + r[2], r[1] + r[3], null);
+            }
+        }
+    }
+
+    // The scaled sprites as non-premultiplied ARGB, sheetWidth() pixels a row, or null while the
+    // atlas is loading
+    int[] pixels() {
+        if (pixels == null) {
+            SpriteAtlas loaded = loaded();
+            if (loaded == null) {
+                return null;
+            }
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            drawSprites(image, loaded);
+            pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        }
+        return pixels;
+    }
+
+    int sheetWidth() {
+        return width;
+    }
+
+    // The atlas if it finished loading, otherwise null
+    private SpriteAtlas loaded() {
+        return atlas.isDone() && !atlas.isCompletedExceptionally() ? atlas.join() : null;
+    }
+
+    private void draw(Graphics2D g, Sprite sprite, int x, int y) {
+        GraphicsConfiguration gc = g.getDeviceConfiguration();
+        if (gc != config) {
+            SpriteAtlas loaded = loaded();
+            if (loaded == null) {
+                // Still loading, or failed to load
+                return;
+            }
+            prepare(gc, loaded);
+        }
+
+        if (accelerated != null) {
+            // Give up on the volatile copy after a few lost attempts and use the managed image
+            for (int attempt = 0; attempt < 3; attempt++) {
+                int status = accelerated.validate(gc);
+                if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+                    accelerated = createAccelerated(gc);
+                    if (accelerated == null) {
+                        break;
+                    }
+                    restore();
+                } else if (status == VolatileImage.IMAGE_RESTORED) {
+                    restore();
+                }
+                sprite.copy(g, accelerated, x, y);
+                if (!accelerated.contentsLost()) {
+                    return;
+                }
+            }
+        }
+        sprite.copy(g, scaled, x, y);
+    }
+
+    private void prepare(GraphicsConfiguration gc, SpriteAtlas atlas) {
+        config = gc;
+        scaled = gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+        drawSprites(scaled, atlas);
+
+        accelerated = gc.getDevice().getType() == GraphicsDevice.TYPE_RASTER_SCREEN
+                ? createAccelerated(gc) : null;
+        if (accelerated != null) {
+            restore();
+        }
+    }
+
+    private void drawSprites(BufferedImage image, SpriteAtlas atlas) {
+        Graphics2D g = image.createGraphics();
+        for (Sprite sprite : sprites) {
+            int[] r = atlas.region(sprite.frame);
+            g.drawImage(atlas.image, sprite.x, sprite.y, sprite.x + sprite.width, sprite.y + sprite.height,
+                    r[0], r[1], r[0] + r[2], r[1] + r[3], null);
+        }
+        g.dispose();
+    }
+
+    private VolatileImage createAccelerated(GraphicsConfiguration gc) {
+        try {
+            return gc.createCompatibleVolatileImage(width, height, Transparency.TRANSLUCENT);
+        } catch (UnsupportedOperationException e) {
+            // Not all pipelines support translucent volatile images
+            return null;
+        }
+    }
+
+    private void restore() {
+        Graphics2D g = accelerated.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(scaled, 0, 0, null);
+        g.dispose();
+    }
+
+    // One atlas frame at one size, and where it is in the scaled image
+    final class Sprite {
+        final int width, height;
+        private final String frame;
+        int x, y;
+
+        Sprite(String frame, int width, int height) {
+            this.frame = frame;
+            this.width = width;
+            this.height = height;
+        }
+
+        void draw(Graphics2D g, int x, int y) {
+            SpriteCache.this.draw(g, this, x, y);
+        }
+
+        private void copy(Graphics2D g, Image image, int dx, int dy) {
+            g.drawImage(image, dx, dy, dx + width, dy + height, x, y, x + width, y + height, null);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package one.cafebabe.game;
+
+import java.awt.image.BufferedImage;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+// Source pixel sizes of the sprites, which determine the size of the game objects
+final class SpriteSizes {
+    final int fighterWidth, fighterHeight;
+    final int enemyWidth, enemyHeight;
+    final int bossWidth, bossHeight;
+
+    SpriteSizes(int fighterWidth, int fighterHeight, int enemyWidth, int enemyHeight,
+                int bossWidth, int bossHeight) {
+        this.fighterWidth = fighterWidth;
+        this.fighterHeight = fighterHeight;
+        this.enemyWidth = enemyWidth;
+        this.enemyHeight = enemyHeight;
+        this.bossWidth = bossWidth;
+        this.bossHeight = bossHeight;
+    }
+
+    static SpriteSizes of(BufferedImage fighter, BufferedImage enemy, BufferedImage boss) {
+        return new SpriteSizes(fighter.getWidth(), fighter.getHeight(),
+                enemy.getWidth(), enemy.getHeight(),
+                boss.getWidth(), boss.getHeight());
+    }
+
+    // Reads only the atlas index or the PNG headers, so no image decoding (and no AWT) is needed
+    static SpriteSizes fromResources() throws IOException {
+        return from(AssetBundle.shared());
+    }
+
+    // From the atlas index, or the PNG headers of the loose sprites
+    static SpriteSizes from(AssetBundle bundle) throws IOException {
+        if (bundle.contains(SpriteAtlas.INDEX)) {
+            Map<String, int[]> regions = SpriteAtlas.readIndex(bundle);
+            int[] fighter = regions.get(SpriteAtlas.FIGHTER);
+            int[] enemy = regions.get(SpriteAtlas.ENEMY);
+            int[] boss = regions.get(SpriteAtlas.BOSS);
+            if (fighter == null || enemy == null || boss == null) {
+                throw new IOException("Sprites missing from " + SpriteAtlas.INDEX);
+            }
+            return new SpriteSizes(fighter[2], fighter[3], enemy[2], enemy[3], boss[2], boss[3]);
+        }
+        int[] fighter = pngSize(bundle, SpriteAtlas.FIGHTER + ".png");
+        int[] enemy = pngSize(bundle, SpriteAtlas.ENEMY + ".png");
+        int[] boss = pngSize(bundle, SpriteAtlas.BOSS + ".png");
+        return new SpriteSizes(fighter[0], fighter[1], enemy[0], enemy[1], boss[0], boss[1]);
+    }
+
+    private static int[] pngSize(AssetBundle bundle, String name) throws IOException {
+        try (InputStream in = bundle.open(name)) {
+            DataInputStream data = new DataInputStream(in);
+            // 8 byte signature, 4 byte chunk length, "IHDR", then width and height
+            data.skipBytes(16);
+            return new int[]{data.readInt(), data.readInt()};
+        }
+    }
+}
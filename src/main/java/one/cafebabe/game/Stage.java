@@ -0,0 +1,317 @@
+package one.cafebabe.game;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+// What happens when in a game, read from a stage script and compiled into a queue of events
+// in time order. A step only looks at the next event, so its cost does not depend on the
+// length of the stage. Each line of a script is "<seconds> <event> [arguments]":
+//
+//   enemy [y]        one enemy enters from the right, at height y or at a random height
+//   wave <seconds>   enemies enter at random for that long (or "forever"), at the
+//                    enemy-spawn-rate and up to the max-enemies of the GameConfig
+//   boss             the boss enters as soon as no enemies are left
+//
+// Lines must be in time order; # starts a comment. Stages named like "stage1" are resources in
+// /stages, read a little ahead of the game, so a long stage is loaded as it is played.
+// Anything else is a file, compiled whole when it is first loaded, so mistakes in it show up
+// at once. A file is watched, so a stage can be edited while the game runs: one daemon thread
+// compiles the file again whenever it changes and, if that worked, every world playing it
+// switches to the new version the next time a game starts. A version with a mistake is
+// reported and the old one kept.
+final class Stage {
+    static final String DEFAULT = "stage1";
+
+    static final int ENEMY = 0;
+    static final int WAVE = 1;
+    static final int BOSS = 2;
+
+    // Events are compiled while they are at most this far ahead of the game
+    private static final long LOOKAHEAD_MILLIS = 30_000;
+    // A changed file is read this long after the first change, so an editor has written it whole
+    private static final long SETTLE_MILLIS = 200;
+
+    final String name;
+    private final Path file;
+
+    // Every stage file in use, by absolute path, and its newest version that compiled. This is
+    // state shared between worlds, but a compiled stage is never changed once it is published.
+    private static final Map<Path, AtomicReference<Stage>> FILES = new ConcurrentHashMap<>();
+    private static WatchService watcher;
+    // Versions of stage files the watcher has compiled, whether they worked or not
+    static final AtomicInteger RECOMPILED = new AtomicInteger();
+
+    // For a file, where its newest version is published, and the version this stage plays
+    private final AtomicReference<Stage> latest;
+    private Stage playing;
+
+    // The compiled events: game time in milliseconds, type, and argument (-1 if none), and
+    // the next one to fire
+    private long[] times = new long[16];
+    private int[] types = new int[16];
+    private long[] args = new long[16];
+    private int count;
+    private int next;
+
+    // The script, opened by the first poll so a stage that is never played holds nothing open,
+    // and whether all of it is compiled
+    private BufferedReader reader;
+    private boolean ended;
+    private int lineNumber;
+
+    private Stage(String name, Path file) {
+        this.name = name;
+        this.file = file;
+        latest = null;
+    }
+
+    // A stage that plays the versions of a file published in latest
+    private Stage(String name, AtomicReference<Stage> latest) {
+        this.name = name;
+        this.file = null;
+        this.latest = latest;
+        play(latest.get());
+    }
+
+    static Stage load(String name) {
+        if (name.matches("[A-Za-z0-9_-]+")) {
+            if (Stage.class.getResource("/stages/" + name + ".stage") == null) {
+                throw new IllegalArgumentException("Unknown stage: " + name);
+            }
+            return new Stage(name, (Path) null);
+        }
+        // The first world to load a file compiles it and starts watching it
+        Path file = Paths.get(name).toAbsolutePath().normalize();
+        AtomicReference<Stage> latest = FILES.computeIfAbsent(file, path -> {
+            AtomicReference<Stage> compiled = new AtomicReference<>(compileFile(name, path));
+            watch(path);
+            return compiled;
+        });
+        return new Stage(name, latest);
+    }
+
+    // Goes back to the first event for a new game, switching to the newest version of the file
+    void restart() {
+        next = 0;
+        if (latest != null && latest.get() != playing) {
+            play(latest.get());
+            System.out.println("Reloaded stage " + name);
+        }
+    }
+
+    // Plays the events of a compiled file, which are shared and never changed again
+    private void play(Stage compiled) {
+        playing = compiled;
+        times = compiled.times;
+        types = compiled.types;
+        args = compiled.args;
+        count = compiled.count;
+        ended = true;
+    }
+
+    // The whole file, compiled; throws if it cannot be read or has a mistake
+    private static Stage compileFile(String name, Path file) {
+        Stage stage = new Stage(name, file);
+        try {
+            stage.compile(Long.MAX_VALUE);
+        } finally {
+            if (stage.reader != null) {
+                stage.close();
+            }
+        }
+        return stage;
+    }
+
+    // The next event that is due at the given game time, or -1. Events are returned once each.
+    int poll(long gameTime) {
+        if (!ended && (count == 0 || times[count - 1] <= gameTime + LOOKAHEAD_MILLIS)) {
+            compile(gameTime + LOOKAHEAD_MILLIS);
+        }
+        return next < count && times[next] <= gameTime ? next++ : -1;
+    }
+
+    int type(int event) {
+        return types[event];
+    }
+
+    long arg(int event) {
+        return args[event];
+    }
+
+    // Compiles lines until one is past the horizon or the script ends
+    private void compile(long horizon) {
+        if (reader == null) {
+            reader = open();
+        }
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                int comment = line.indexOf('#');
+                String[] words = (comment >= 0 ? line.substring(0, comment) : line).trim().split("\\s+");
+                if (words[0].isEmpty()) {
+                    continue;
+                }
+                add(words);
+                if (times[count - 1] > horizon) {
+                    return;
+                }
+            }
+            close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read stage " + name, e);
+        }
+    }
+
+    private void add(String[] words) {
+        long time = millis(words[0]);
+        if (count > 0 && time < times[count - 1]) {
+            throw error("events must be in time order");
+        }
+        int type;
+        long arg = -1;
+        switch (words.length > 1 ? words[1] : "") {
+            case "enemy":
+                type = ENEMY;
+                if (words.length > 2) {
+                    arg = Math.round(number(words[2]));
+                }
+                break;
+            case "wave":
+                type = WAVE;
+                if (words.length < 3) {
+                    throw error("wave needs a length in seconds or \"forever\"");
+                }
+                arg = words[2].equals("forever") ? Long.MAX_VALUE : millis(words[2]);
+                break;
+            case "boss":
+                type = BOSS;
+                break;
+            default:
+                throw error("unknown event");
+        }
+
+        if (count == times.length) {
+            times = Arrays.copyOf(times, count * 2);
+            types = Arrays.copyOf(types, count * 2);
+            args = Arrays.copyOf(args, count * 2);
+        }
+        times[count] = time;
+        types[count] = type;
+        args[count] = arg;
+        count++;
+    }
+
+    private long millis(String seconds) {
+        return Math.round(number(seconds) * 1000);
+    }
+
+    private double number(String word) {
+        try {
+            double value = Double.parseDouble(word);
+            if (value >= 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw error("not a number >= 0: " + word);
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("Stage " + name + ", line " + lineNumber + ": " + message);
+    }
+
+    private BufferedReader open() {
+        try {
+            InputStream in = file == null
+                    ? Stage.class.getResourceAsStream("/stages/" + name + ".stage")
+                    : Files.newInputStream(file);
+            return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read stage " + name, e);
+        }
+    }
+
+    private void close() {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        reader = null;
+        ended = true;
+    }
+
+    // Watches the directory of a stage file, with the one watcher thread of the process
+    private static synchronized void watch(Path file) {
+        try {
+            if (watcher == null) {
+                watcher = FileSystems.getDefault().newWatchService();
+                Thread thread = new Thread(() -> recompileChanges(watcher), "Stage watcher");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            // Registering a directory again returns the key it already has
+            file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            System.out.println("Stage " + file + " will not be reloaded: " + e);
+        }
+    }
+
+    // Compiles every stage file in use that was written, and publishes the versions that worked
+    private static void recompileChanges(WatchService watcher) {
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                Thread.sleep(SETTLE_MILLIS);
+                Set<Path> changed = new LinkedHashSet<>();
+                for (; key != null; key = watcher.poll()) {
+                    Path directory = (Path) key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.context() instanceof Path) {
+                            changed.add(directory.resolve((Path) event.context()));
+                        }
+                    }
+                    key.reset();
+                }
+
+                for (Path file : changed) {
+                    AtomicReference<Stage> latest = FILES.get(file);
+                    if (latest == null) {
+                        continue;
+                    }
+                    String name = latest.get().name;
+                    try {
+                        latest.set(compileFile(name, file));
+                    } catch (IllegalArgumentException | UncheckedIOException e) {
+                        System.out.println("Stage " + name + " not reloaded, keeping the previous version: " + e.getMessage());
+                    }
+                    RECOMPILED.incrementAndGet();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stop watching
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package one.cafebabe.game;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+// JFR event for one simulation step, with the time spent in each of its phases. Lines up
+// slow steps with GC pauses and the sound thread in a flight recording.
+@Name("one.cafebabe.game.Step")
+@Label("Simulation Step")
+@Category("Junie Fighter")
+@Description("One fixed simulation step of the game world")
+final class StepEvent extends Event {
+    private static final EventType TYPE = EventType.getEventType(StepEvent.class);
+
+    @Label("Game State")
+    String gameState;
+
+    @Label("Fighter")
+    @Timespan(Timespan.NANOSECONDS)
+    long fighter;
+
+    @Label("Bullets")
+    @Timespan(Timespan.NANOSECONDS)
+    long bullets;
+
+    @Label("Enemies")
+    @Timespan(Timespan.NANOSECONDS)
+    long enemies;
+
+    @Label("Boss")
+    @Timespan(Timespan.NANOSECONDS)
+    long boss;
+
+    @Label("Enemy Bullets")
+    @Timespan(Timespan.NANOSECONDS)
+    long enemyBullets;
+
+    @Label("Explosions")
+    @Timespan(Timespan.NANOSECONDS)
+    long explosions;
+
+    @Label("Particles")
+    @Timespan(Timespan.NANOSECONDS)
+    long particles;
+
+    @Label("Collisions")
+    @Timespan(Timespan.NANOSECONDS)
+    long collisions;
+
+    // A started event when a recording wants step events, otherwise null without allocating
+    static StepEvent beginIfRecording() {
+        if (!TYPE.isEnabled()) {
+            return null;
+        }
+        StepEvent event = new StepEvent();
+        event.begin();
+        return event;
+    }
+
+    void commit(GameWorld.GameState state, FrameProfiler profiler) {
+        gameState = state.name();
+        if (state == GameWorld.GameState.PLAYING) {
+            long[] last = profiler.last;
+            fighter = last[FrameProfiler.Phase.FIGHTER.ordinal()];
+            bullets = last[FrameProfiler.Phase.BULLETS.ordinal()];
+            enemies = last[FrameProfiler.Phase.ENEMIES.ordinal()];
+            boss = last[FrameProfiler.Phase.BOSS.ordinal()];
+            enemyBullets = last[FrameProfiler.Phase.ENEMY_BULLETS.ordinal()];
+            explosions = last[FrameProfiler.Phase.EXPLOSIONS.ordinal()];
+            particles = last[FrameProfiler.Phase.PARTICLES.ordinal()];
+            collisions = last[FrameProfiler.Phase.COLLISIONS.ordinal()];
+        }
+        commit();
+    }
+}
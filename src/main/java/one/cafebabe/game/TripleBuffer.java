@@ -0,0 +1,45 @@
+package one.cafebabe.game;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Lock-free handoff of preallocated frames from one writer thread to one reader thread.
+// The writer fills its back buffer and publishes it by swapping it with the middle buffer;
+// the reader swaps the middle buffer with its front buffer when a new frame was published.
+// Each side always owns one complete buffer, so neither thread ever waits for the other.
+final class TripleBuffer<T> {
+    private static final int FRESH = 4;
+    private static final int INDEX = 3;
+
+    private final Object[] buffers = new Object[3];
+    // Index of the middle buffer, plus FRESH when it holds a frame the reader has not taken
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;
+    private int front = 2;
+
+    TripleBuffer(Supplier<T> factory) {
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = factory.get();
+        }
+    }
+
+    // The buffer the writer fills next
+    @SuppressWarnings("unchecked")
+    T back() {
+        return (T) buffers[back];
+    }
+
+    // Makes the filled back buffer the newest frame
+    void publish() {
+        back = middle.getAndSet(back | FRESH) & INDEX;
+    }
+
+    // The newest published frame; it stays valid until the next call
+    @SuppressWarnings("unchecked")
+    T acquire() {
+        if ((middle.get() & FRESH) != 0) {
+            front = middle.getAndSet(front) & INDEX;
+        }
+        return (T) buffers[front];
+    }
+}
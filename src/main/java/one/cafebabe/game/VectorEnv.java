@@ -0,0 +1,97 @@
+package one.cafebabe.game;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Properties;
+
+// N GameEnvs stepped together by one call, with their observations, rewards and done flags
+// in shared direct buffers: environment i's observation is the GameEnv.OBSERVATION_SIZE floats
+// from i * OBSERVATION_SIZE on. An environment whose episode ends is reset right away with
+// the next seed, so its observation after that step is already the start of a new episode,
+// and its done flag is 1 for that one step.
+public final class VectorEnv {
+    private final GameEnv[] envs;
+    private final ByteBuffer observationBytes;
+    private final FloatBuffer observations;
+    private final ByteBuffer rewardBytes;
+    private final FloatBuffer rewards;
+    private final ByteBuffer dones;
+    private long nextSeed;
+
+    public VectorEnv(int count) {
+        this(count, new Properties(), 1);
+    }
+
+    public VectorEnv(int count, Properties settings, int frameSkip) {
+        GameConfig config = new GameConfig(settings);
+        observationBytes = GameEnv.newObservationBuffer(count);
+        observations = observationBytes.asFloatBuffer();
+        envs = new GameEnv[count];
+        for (int i = 0; i < count; i++) {
+            envs[i] = new GameEnv(config, frameSkip, observationBytes, i * GameEnv.OBSERVATION_SIZE);
+        }
+        rewardBytes = ByteBuffer.allocateDirect(count * Float.BYTES).order(ByteOrder.nativeOrder());
+        rewards = rewardBytes.asFloatBuffer();
+        dones = ByteBuffer.allocateDirect(count).order(ByteOrder.nativeOrder());
+    }
+
+    public int count() {
+        return envs.length;
+    }
+
+    public ByteBuffer observationBytes() {
+        return observationBytes;
+    }
+
+    public FloatBuffer observations() {
+        return observations;
+    }
+
+    public ByteBuffer rewardBytes() {
+        return rewardBytes;
+    }
+
+    public FloatBuffer rewards() {
+        return rewards;
+    }
+
+    // One byte per environment, 1 if its episode ended in the last step
+    public ByteBuffer dones() {
+        return dones;
+    }
+
+    // Resets environment i with seed + i; later episodes continue with seed + count, and so on
+    public void reset(long seed) {
+        for (int i = 0; i < envs.length; i++) {
+            envs[i].reset(seed + i);
+            rewards.put(i, 0);
+            dones.put(i, (byte) 0);
+        }
+        nextSeed = seed + envs.length;
+    }
+
+    // Plays actions.get(i) in environment i
+    public void step(IntBuffer actions) {
+        for (int i = 0; i < envs.length; i++) {
+            step(i, actions.get(i));
+        }
+    }
+
+    public void step(int[] actions) {
+        for (int i = 0; i < envs.length; i++) {
+            step(i, actions[i]);
+        }
+    }
+
+    private void step(int i, int action) {
+        GameEnv env = envs[i];
+        rewards.put(i, env.step(action));
+        boolean done = env.done();
+        dones.put(i, (byte) (done ? 1 : 0));
+        if (done) {
+            env.reset(nextSeed++);
+        }
+    }
+}
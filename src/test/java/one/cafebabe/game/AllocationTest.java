@@ -0,0 +1,31 @@
+package one.cafebabe.game;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// A steady-state step allocates nothing. The budget leaves room for what the JIT and the
+// first use of a code path may allocate on the measuring thread.
+class AllocationTest {
+    private static final long BUDGET_BYTES = 16 * 1024;
+
+    @Test
+    void simulatedMinuteOfPlayStaysWithinBudget() throws IOException {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        HeadlessGame game = new HeadlessGame(GameWorld.STEP_NANOS, 42);
+
+        // Warm up, so that pools are full and the hot paths are compiled
+        game.simulate(10 * 60 * 1_000_000_000L);
+        long before = threads.getThreadAllocatedBytes(threadId);
+        game.simulate(60 * 1_000_000_000L);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(allocated <= BUDGET_BYTES,
+                () -> "Allocated " + allocated + " bytes in a simulated minute of play, budget " + BUDGET_BYTES);
+    }
+}
@@ -0,0 +1,87 @@
+package one.cafebabe.game;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CollisionTest {
+    private static final float WIDTH = 38, HEIGHT = 38;
+
+    // The grid must find the same first hit as testing every box in order, also for boxes
+    // flagged dead or removed from the store after the grid was built
+    @Test
+    void gridAgreesWithScan() {
+        Random random = new Random(1);
+        SpatialGrid grid = new SpatialGrid(GameWorld.WIDTH, GameWorld.HEIGHT);
+        EntityStore boxes = new EntityStore(512);
+        EntityStore circles = new EntityStore(512);
+        for (int round = 0; round < 200; round++) {
+            boxes.clear();
+            circles.clear();
+            for (int k = random.nextInt(400); k > 0; k--) {
+                int j = boxes.add(random.nextFloat() * 700 - 50, random.nextFloat() * 700 - 50);
+                boxes.prevX[j] = boxes.x[j] + random.nextFloat() * 20;
+                boxes.prevY[j] = boxes.y[j] + random.nextFloat() * 20 - 10;
+                if (random.nextInt(10) == 0) {
+                    boxes.flags[j] |= EntityStore.DEAD;
+                }
+            }
+            for (int k = random.nextInt(200); k > 0; k--) {
+                int i = circles.add(random.nextFloat() * 700 - 50, random.nextFloat() * 700 - 50);
+                circles.prevX[i] = circles.x[i] - random.nextFloat() * 60;
+                circles.prevY[i] = circles.y[i];
+                circles.radius[i] = 5;
+            }
+            grid.buildBoxes(boxes, WIDTH, HEIGHT);
+            if (round % 2 == 1) {
+                boxes.count = random.nextInt(boxes.count + 1);
+            }
+
+            for (int i = 0; i < circles.count; i++) {
+                int expected = SpatialGrid.scanForFirstHit(boxes, WIDTH, HEIGHT, circles, i);
+                int actual = grid.firstHit(boxes, WIDTH, HEIGHT, circles, i);
+                assertEquals(expected, actual, "round " + round + ", circle " + i);
+            }
+        }
+    }
+
+    // Defeating the boss ends the game and clears the enemies; the bullets after the one that
+    // hit the boss must not score for enemies that are gone, with or without the grid
+    @Test
+    void noHitsAfterTheBossIsDefeated() throws IOException {
+        assertEquals(100, scoreForBossKill(300));
+        assertEquals(100, scoreForBossKill(20));
+    }
+
+    private static int scoreForBossKill(int enemyCount) throws IOException {
+        GameWorld world = new GameWorld(SpriteSizes.fromResources(), SoundPlayer.SILENT, 1, GameConfig.DEFAULT);
+        world.gameState = GameWorld.GameState.PLAYING;
+        world.fighter.x = world.fighter.prevX = 100;
+        world.fighter.y = world.fighter.prevY = 520;
+        world.boss = world.new Boss().init(320, 20);
+        for (int k = 0; k < 9; k++) {
+            world.boss.hit();
+        }
+        for (int k = 0; k < enemyCount; k++) {
+            world.enemies.add(10 * (k % 25), 10 * (k / 25));
+        }
+
+        // The first bullet defeats the boss, the others are on enemies
+        addBullet(world, world.boss.x + world.boss.width / 2f, world.boss.y + world.boss.height / 2f);
+        for (int k = 0; k < 20; k++) {
+            addBullet(world, world.enemies.x[k] + world.enemyWidth / 2f, world.enemies.y[k] + world.enemyHeight / 2f);
+        }
+
+        world.checkCollisions();
+        assertEquals(GameWorld.GameState.GAME_OVER, world.gameState);
+        return world.score;
+    }
+
+    private static void addBullet(GameWorld world, float x, float y) {
+        int i = world.bullets.add(x, y);
+        world.bullets.radius[i] = 5;
+    }
+}
@@ -0,0 +1,22 @@
+package one.cafebabe.game;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GameConfigTest {
+    @Test
+    void countsAreScaledByLoad() {
+        GameConfig config = GameConfig.DEFAULT.with(GameConfig.MAX_ENEMIES, 7).with(GameConfig.LOAD, 2.5);
+        assertEquals(18, config.maxEnemies);
+    }
+
+    @Test
+    void fractionalCountsAreRejected() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> GameConfig.DEFAULT.with(GameConfig.MAX_ENEMIES, 2.5));
+        assertTrue(e.getMessage().contains(GameConfig.MAX_ENEMIES), e.getMessage());
+    }
+}
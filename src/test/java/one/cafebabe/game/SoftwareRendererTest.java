@@ -0,0 +1,100 @@
+package one.cafebabe.game;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The software renderer must draw what Java2D draws, at every quality level: frames of a
+// session with random input are drawn both ways and compared pixel by pixel. It blends like
+// Java2D but may round the other way, so channels may differ by the tolerance.
+class SoftwareRendererTest {
+    private static final int TOLERANCE = 2;
+    private static final int STEPS_PER_FRAME = 11;
+
+    @Test
+    void matchesJava2dAtEveryQualityLevel() throws IOException, InterruptedException {
+        // Every sprite has to be there, or one renderer might draw it and the other not
+        Assets assets = Assets.load();
+        Assets.await(assets.all);
+        GameWorld world = new GameWorld(assets.sizes, SoundPlayer.SILENT, 3,
+                GameConfig.DEFAULT.with(GameConfig.LOAD, 20));
+        GameConfig config = world.config;
+        RenderSnapshot snapshot = new RenderSnapshot(
+                config.bulletCapacity, config.enemyCapacity, config.enemyBulletCapacity);
+
+        QualityController.Level[] levels = QualityController.Level.values();
+        GameRenderer[] java2d = new GameRenderer[levels.length];
+        GameRenderer[] software = new GameRenderer[levels.length];
+        for (int i = 0; i < levels.length; i++) {
+            java2d[i] = new GameRenderer(new SpriteCache(assets));
+            java2d[i].setQuality(QualityController.fixed(levels[i]));
+            software[i] = new GameRenderer(new SpriteCache(assets));
+            software[i].setQuality(QualityController.fixed(levels[i]));
+            software[i].setSoftware(true);
+        }
+        BufferedImage expected = new BufferedImage(GameWorld.WIDTH, GameWorld.HEIGHT, BufferedImage.TYPE_INT_RGB);
+        BufferedImage actual = new BufferedImage(GameWorld.WIDTH, GameWorld.HEIGHT, BufferedImage.TYPE_INT_RGB);
+
+        // Random moves with the fire button mostly held, which also starts and restarts games,
+        // so the title, playing and game over screens are all drawn
+        Random input = new Random(3);
+        int[] states = new int[GameWorld.GameState.values().length];
+        for (int step = 0; step < 60 * GameWorld.TICKS_PER_SECOND; step++) {
+            world.applyInput(input.nextInt(32) | (input.nextInt(8) == 0 ? 0 : Input.FIRE));
+            world.update(GameWorld.STEP_NANOS);
+            if (step % STEPS_PER_FRAME != 0) {
+                continue;
+            }
+            snapshot.capture(world, input.nextFloat());
+            states[world.gameState.ordinal()]++;
+            for (int i = 0; i < levels.length; i++) {
+                draw(java2d[i], expected, snapshot);
+                draw(software[i], actual, snapshot);
+                int position = firstDifference(expected, actual);
+                if (position >= 0) {
+                    throw new AssertionError(String.format(
+                            "%s, step %d, %s: pixel (%d, %d) is %06x in Java2D and %06x in software",
+                            levels[i], step, world.gameState, position % GameWorld.WIDTH, position / GameWorld.WIDTH,
+                            expected.getRGB(position % GameWorld.WIDTH, position / GameWorld.WIDTH) & 0xFFFFFF,
+                            actual.getRGB(position % GameWorld.WIDTH, position / GameWorld.WIDTH) & 0xFFFFFF));
+                }
+            }
+        }
+        for (GameWorld.GameState state : GameWorld.GameState.values()) {
+            assertTrue(states[state.ordinal()] > 0, "no frames of " + state);
+        }
+    }
+
+    // Draws the snapshot like the game does, onto black
+    private static void draw(GameRenderer renderer, BufferedImage image, RenderSnapshot snapshot) {
+        Graphics2D g2d = image.createGraphics();
+        try {
+            g2d.setColor(Color.BLACK);
+            g2d.fillRect(0, 0, GameWorld.WIDTH, GameWorld.HEIGHT);
+            renderer.render(g2d, snapshot);
+        } finally {
+            g2d.dispose();
+        }
+    }
+
+    // The index of the first pixel with a colour channel off by more than the tolerance, or -1
+    private static int firstDifference(BufferedImage expected, BufferedImage actual) {
+        int[] a = ((DataBufferInt) expected.getRaster().getDataBuffer()).getData();
+        int[] b = ((DataBufferInt) actual.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < a.length; i++) {
+            for (int shift = 0; shift <= 16; shift += 8) {
+                if (Math.abs((a[i] >> shift & 0xFF) - (b[i] >> shift & 0xFF)) > TOLERANCE) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,74 @@
+package one.cafebabe.game;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StageTest {
+    @Test
+    void compilesEventsInTimeOrder() {
+        Stage stage = Stage.load(Stage.DEFAULT);
+        int wave = stage.poll(0);
+        assertEquals(Stage.WAVE, stage.type(wave));
+        assertEquals(10_000, stage.arg(wave));
+        assertEquals(-1, stage.poll(9_999));
+        assertEquals(Stage.BOSS, stage.type(stage.poll(10_000)));
+    }
+
+    @Test
+    void mistakesInAFileAreReportedWhenItIsLoaded() throws IOException {
+        Path file = write(Files.createTempFile("broken", ".stage"), "0 enemy\n5 dragon\n");
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> Stage.load(file.toString()));
+        assertTrue(e.getMessage().contains("line 2"), e.getMessage());
+    }
+
+    // Every world playing a file is watched by the same thread, a version with a mistake is
+    // skipped, and a good one is picked up when the next game starts
+    @Test
+    void reloadsOnlyVersionsThatCompile() throws Exception {
+        Path file = write(Files.createTempFile("edited", ".stage"), "0 enemy 100\n");
+        Stage[] stages = new Stage[50];
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = Stage.load(file.toString());
+        }
+        assertEquals(1, Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().equals("Stage watcher")).count());
+        Stage stage = stages[0];
+
+        int recompiled = Stage.RECOMPILED.get();
+        write(file, "0 enemy 100\n1 bos\n");
+        long deadline = System.nanoTime() + 30_000_000_000L;
+        while (Stage.RECOMPILED.get() == recompiled) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("The broken version was not compiled");
+            }
+            Thread.sleep(10);
+        }
+        stage.restart();
+        assertEquals(100, stage.arg(stage.poll(0)));
+        assertEquals(-1, stage.poll(60_000));
+
+        write(file, "0 enemy 200\n1 boss\n");
+        for (deadline = System.nanoTime() + 30_000_000_000L; System.nanoTime() < deadline; ) {
+            stage.restart();
+            int event = stage.poll(0);
+            if (stage.arg(event) == 200) {
+                assertEquals(Stage.BOSS, stage.type(stage.poll(1000)));
+                return;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("The stage was not reloaded");
+    }
+
+    private static Path write(Path file, String script) throws IOException {
+        return Files.write(file, script.getBytes(StandardCharsets.UTF_8));
+    }
+}